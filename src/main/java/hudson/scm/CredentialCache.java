@@ -0,0 +1,148 @@
+package hudson.scm;
+
+import hudson.model.Computer;
+import hudson.model.Hudson;
+import hudson.model.Hudson.MasterComputer;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+import hudson.scm.SubversionSCM.DescriptorImpl.Credential;
+import hudson.scm.SubversionSCM.DescriptorImpl.RemotableSVNAuthenticationProvider;
+import hudson.scm.SubversionSCM.DescriptorImpl.SerializableSVNURL;
+import hudson.scm.credential.SshPublicKeyCredential;
+import hudson.scm.subversion.RepositorySessionPool;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches, on each node, the credentials looked up from the master through {@link RemotableSVNAuthenticationProvider},
+ * so that the authentication challenges of a check out don't each cost a round trip to the master.
+ *
+ * <p>
+ * Entries are per realm and repository, so all the URLs of a repository share one lookup once a session has been
+ * to that repository; until then, the URL itself is used. Entries, including the absence of a credential, are kept
+ * for {@link #TTL} seconds. When stored credentials of a realm change, the master drops that realm on all the nodes,
+ * and a node drops a realm as soon as authentication in it fails.
+ */
+final class CredentialCache {
+    private static final class Entry {
+        final Credential credential;
+        final long expires;
+
+        Entry(Credential credential, long expires) {
+            this.credential = credential;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Keyed by realm, source and repository root, in this order.
+     */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Bumped by {@link #invalidate(String)}, so that a lookup that was in flight meanwhile doesn't put back
+     * a stale entry.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Looks up a credential, from the cache if possible.
+     *
+     * @param source
+     *      Identifies the store behind the provider, such as the job whose credentials it has.
+     */
+    Credential getCredential(RemotableSVNAuthenticationProvider src, String source, SVNURL url, String realm)
+        throws SVNException {
+        if (TTL <= 0) {
+            return src.getCredential(new SerializableSVNURL(url), realm);
+        }
+        SVNURL root = RepositorySessionPool.INSTANCE.getKnownRoot(url);
+        String key = realm + '\n' + source + '\n' + (root != null ? root : url).toDecodedString();
+        long now = System.currentTimeMillis();
+        Entry e = entries.get(key);
+        if (e != null && e.expires > now) {
+            return e.credential;
+        }
+        long g = generation.get();
+        Credential c = src.getCredential(new SerializableSVNURL(url), realm);
+        if (generation.get() == g) {
+            entries.put(key, new Entry(c, now + TTL * 1000L));
+        }
+        return c;
+    }
+
+    /**
+     * Drops the entries of a realm, for example because authentication failed with them.
+     */
+    void invalidate(String realm) {
+        generation.incrementAndGet();
+        String prefix = realm + '\n';
+        for (Iterator<String> itr = entries.keySet().iterator(); itr.hasNext(); ) {
+            if (itr.next().startsWith(prefix)) {
+                itr.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops a realm on the master and on all the connected nodes. Called on the master when the stored
+     * credentials of the realm change.
+     */
+    static void invalidateEverywhere(String realm) {
+        changed(realm);
+        Hudson h = Hudson.getInstance();
+        if (h == null) {
+            return;
+        }
+        for (Computer c : h.getComputers()) {
+            VirtualChannel channel = c.getChannel();
+            if (channel == null || channel == MasterComputer.localChannel) {
+                continue;
+            }
+            try {
+                channel.callAsync(new InvalidateTask(realm));
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE,
+                    "Failed to invalidate " + realm + " in the credential cache of " + c.getName(), e);
+            }
+        }
+    }
+
+    private static void changed(String realm) {
+        INSTANCE.invalidate(realm);
+        // keys are cached by credential, so a removed or replaced credential must not leave its key behind
+        SshPublicKeyCredential.forgetKeys();
+    }
+
+    private static final class InvalidateTask implements Callable<Void, RuntimeException> {
+        private final String realm;
+
+        InvalidateTask(String realm) {
+            this.realm = realm;
+        }
+
+        public Void call() {
+            changed(realm);
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Seconds a looked up credential is reused on a node. 0 to always ask the master.
+     */
+    public static int TTL = Integer.getInteger(CredentialCache.class.getName() + ".ttl", 300);
+
+    static final CredentialCache INSTANCE = new CredentialCache();
+
+    private static final Logger LOGGER = Logger.getLogger(CredentialCache.class.getName());
+}
@@ -0,0 +1,162 @@
+package hudson.scm;
+
+import hudson.scm.SubversionSCM.DescriptorImpl.Credential;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Read-only snapshot of a credential store, indexed for the lookups the stores do on each authentication
+ * challenge: which stored keys are prefixes of a URL, and which stored keys occur in a realm.
+ *
+ * <p>
+ * The keys are kept in a character trie, so these lookups cost the length of the URL or realm rather than
+ * the number of stored keys. A store builds a new snapshot when its credentials change, and readers use
+ * whichever snapshot is current without locking.
+ */
+final class CredentialIndex {
+    private static final class Node {
+        /**
+         * Sorted labels of the children.
+         */
+        final char[] labels;
+        final Node[] children;
+        /**
+         * The stored key ending here, or null.
+         */
+        final String key;
+
+        Node(char[] labels, Node[] children, String key) {
+            this.labels = labels;
+            this.children = children;
+            this.key = key;
+        }
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i >= 0 ? children[i] : null;
+        }
+    }
+
+    private static final class Builder {
+        final TreeMap<Character, Builder> children = new TreeMap<Character, Builder>();
+        String key;
+
+        Node build() {
+            char[] labels = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> e : children.entrySet()) {
+                labels[i] = e.getKey().charValue();
+                nodes[i++] = e.getValue().build();
+            }
+            return new Node(labels, nodes, key);
+        }
+    }
+
+    private final Map<String, Credential> credentials;
+    /**
+     * The keys in the iteration order of the map this index was built from.
+     */
+    private final List<String> order;
+    private final Node root;
+
+    /**
+     * @param credentials
+     *      Copied, so the caller must keep it from changing during the call.
+     */
+    CredentialIndex(Map<String, Credential> credentials) {
+        this.credentials = new HashMap<String, Credential>(credentials);
+        this.order = new ArrayList<String>(credentials.keySet());
+        Builder b = new Builder();
+        for (String key : this.credentials.keySet()) {
+            Builder n = b;
+            for (int i = 0; i < key.length(); i++) {
+                Character c = Character.valueOf(key.charAt(i));
+                Builder child = n.children.get(c);
+                if (child == null) {
+                    child = new Builder();
+                    n.children.put(c, child);
+                }
+                n = child;
+            }
+            n.key = key;
+        }
+        this.root = b.build();
+    }
+
+    Credential get(String key) {
+        return credentials.get(key);
+    }
+
+    /**
+     * Finds the stored keys that are prefixes of the given string.
+     *
+     * @return
+     *      An array indexed by length, where element {@code n} is true if the first {@code n} characters
+     *      of {@code s} are a stored key.
+     */
+    boolean[] prefixesOf(String s) {
+        boolean[] found = new boolean[s.length() + 1];
+        Node n = root;
+        for (int i = 0; n != null; i++) {
+            if (n.key != null) {
+                found[i] = true;
+            }
+            if (i == s.length()) {
+                break;
+            }
+            n = n.child(s.charAt(i));
+        }
+        return found;
+    }
+
+    /**
+     * Finds the stored keys that occur in the given string, as {@link String#contains(CharSequence)} would.
+     */
+    Set<String> keysIn(String s) {
+        Set<String> found = new LinkedHashSet<String>();
+        for (int start = 0; start <= s.length(); start++) {
+            Node n = root;
+            for (int i = start; n != null; i++) {
+                if (n.key != null) {
+                    found.add(n.key);
+                }
+                if (i == s.length()) {
+                    break;
+                }
+                n = n.child(s.charAt(i));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Looks up the credential of a realm the way the global store always has: the realm itself, or else
+     * the first key that occurs in the realm, in the iteration order of the map this index was built from.
+     */
+    Credential getForRealm(String realm) {
+        Credential cred = credentials.get(realm);
+        if (cred != null) {
+            return cred;
+        }
+        Set<String> keys = keysIn(realm);
+        if (keys.size() == 1) {
+            return credentials.get(keys.iterator().next());
+        }
+        if (!keys.isEmpty()) {
+            for (String key : order) {
+                if (keys.contains(key)) {
+                    return credentials.get(key);
+                }
+            }
+        }
+        return null;
+    }
+}
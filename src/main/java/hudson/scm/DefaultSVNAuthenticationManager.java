@@ -30,7 +30,6 @@ import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.auth.SVNAuthentication;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
-import org.tmatesoft.svn.core.wc.SVNWCUtil;
 import org.tmatesoft.svn.util.SVNLogType;
 
 import hudson.scm.auth.ISVNAuthenticationManager;
@@ -50,7 +49,7 @@ public class DefaultSVNAuthenticationManager extends org.tmatesoft.svn.core.inte
 
 	public DefaultSVNAuthenticationManager(
 			org.tmatesoft.svn.core.auth.ISVNAuthenticationManager createDefaultAuthenticationManager) {
-		super(SVNWCUtil.getDefaultConfigurationDirectory(), createDefaultAuthenticationManager.isAuthenticationForced(), null, null);
+		super(SVNOptionsCache.INSTANCE.getConfigDirectory(), createDefaultAuthenticationManager.isAuthenticationForced(), null, null);
 	}
 
 	
@@ -69,8 +68,8 @@ public class DefaultSVNAuthenticationManager extends org.tmatesoft.svn.core.inte
 	}
 
 	public DefaultSVNAuthenticationManager() {
-		this(SVNWCUtil.getDefaultConfigurationDirectory(), 
-				SVNWCUtil.createDefaultOptions(SVNWCUtil.getDefaultConfigurationDirectory(), true).isAuthStorageEnabled(),
+		this(SVNOptionsCache.INSTANCE.getConfigDirectory(),
+				SVNOptionsCache.INSTANCE.getOptions().isAuthStorageEnabled(),
 				null, null, null, null);
 	}
 
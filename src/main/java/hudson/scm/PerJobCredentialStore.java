@@ -10,6 +10,7 @@ import hudson.model.Saveable;
 import hudson.model.AbstractProject;
 import hudson.model.Hudson;
 import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
 import hudson.model.listeners.SaveableListener;
 import hudson.remoting.Channel;
 import hudson.scm.SubversionSCM.DescriptorImpl.Credential;
@@ -19,8 +20,13 @@ import hudson.scm.subversion.Messages;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import org.tmatesoft.svn.core.SVNException;
@@ -44,6 +50,69 @@ final class PerJobCredentialStore implements Saveable, RemotableSVNAuthenticatio
 
     private static final String credentialsFileName = "subversion.credentials";
 
+    /**
+     * Changes that are not written yet, by the file they go to.
+     */
+    private static final Map<File, Pending> PENDING = new HashMap<File, Pending>();
+
+    /**
+     * Changes acknowledged by any of the stores of a job, keyed like {@link #credentials}. A null value
+     * is a removal. Guarded by {@link #PENDING}.
+     */
+    private static final class Pending {
+        final AbstractProject<?, ?> project;
+        final Map<String, Credential> changes = new HashMap<String, Credential>();
+
+        Pending(AbstractProject<?, ?> project) {
+            this.project = project;
+        }
+    }
+
+    /**
+     * Writes the pending stores in the background. Guarded by {@link #PENDING}.
+     */
+    private static Timer writer;
+
+    /**
+     * How long to wait after a change before writing it, in milliseconds,
+     * so that a burst of changes is written once.
+     */
+    public static int SAVE_DELAY = Integer.getInteger(PerJobCredentialStore.class.getName() + ".saveDelay", 1000);
+
+    /**
+     * Maximum number of credential files whose index is kept for the next stores of the same job.
+     */
+    public static int MAX_CACHED_INDEXES =
+        Integer.getInteger(PerJobCredentialStore.class.getName() + ".maxCachedIndexes", 64);
+
+    private static final class CachedIndex {
+        final long generation;
+        final long lastModified;
+        final CredentialIndex index;
+
+        CachedIndex(long generation, long lastModified, CredentialIndex index) {
+            this.generation = generation;
+            this.lastModified = lastModified;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Indexes built from the credential files, so that the stores created for each operation of a job don't each
+     * build their own. Least recently used first. Guarded by itself.
+     */
+    private static final Map<File, CachedIndex> INDEXES = new LinkedHashMap<File, CachedIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, CachedIndex> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    };
+
+    /**
+     * Bumped whenever a credential file is written, so that an index built from an earlier read isn't reused.
+     */
+    private static final AtomicLong SAVES = new AtomicLong();
+
     private transient CredentialsSaveableListener saveableListener;
 
     /**
@@ -51,6 +120,22 @@ final class PerJobCredentialStore implements Saveable, RemotableSVNAuthenticatio
      */
     private final Map<String, Credential> credentials = new Hashtable<String, Credential>();
 
+    /**
+     * Snapshot of {@link #credentials} for lookups, rebuilt after a change. Null until needed.
+     */
+    private transient volatile CredentialIndex credentialIndex;
+
+    /**
+     * Number of changes made to {@link #credentials}.
+     */
+    private transient int changes;
+
+    /**
+     * The file {@link #credentials} were read from, or null if they weren't, and the state of that file then.
+     */
+    private transient File readFrom;
+    private transient long readModified, readGeneration;
+
     PerJobCredentialStore(AbstractProject<?, ?> project, String url) {
         this.project = project;
         this.url = url;
@@ -58,23 +143,82 @@ final class PerJobCredentialStore implements Saveable, RemotableSVNAuthenticatio
         XmlFile xml = getXmlFile(project);
         try {
             if (xml.exists()) {
+                long generation = SAVES.get();
+                long modified = xml.getFile().lastModified();
                 xml.unmarshal(this);
+                readFrom = xml.getFile();
+                readModified = modified;
+                readGeneration = generation;
             }
         } catch (IOException e) {
             // ignore the failure to unmarshal, or else we'll never get through beyond this point.
             LOGGER.log(INFO, Messages.PerJobCredentialStore_readCredentials_error(xml), e);
         }
+        synchronized (PENDING) {
+            Pending pending = PENDING.get(xml.getFile());
+            if (pending != null) {
+                // the file is behind
+                apply(pending.changes, credentials);
+                readFrom = null;
+            }
+        }
+    }
+
+    private static void apply(Map<String, Credential> changes, Map<String, Credential> credentials) {
+        for (Map.Entry<String, Credential> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                credentials.remove(e.getKey());
+            } else {
+                credentials.put(e.getKey(), e.getValue());
+            }
+        }
     }
 
-    private synchronized Credential get(String key) {
-        return credentials.get(key);
+    private CredentialIndex getIndex() {
+        CredentialIndex i = credentialIndex;
+        if (i == null) {
+            synchronized (this) {
+                i = credentialIndex;
+                if (i == null) {
+                    i = getCachedIndex();
+                    if (i == null) {
+                        i = new CredentialIndex(credentials);
+                        if (readFrom != null && changes == 0) {
+                            synchronized (INDEXES) {
+                                INDEXES.put(readFrom, new CachedIndex(readGeneration, readModified, i));
+                            }
+                        }
+                    }
+                    credentialIndex = i;
+                }
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Finds the index of what this store has read, if another store of the job has built it already.
+     * Must be called while holding this.
+     */
+    private CredentialIndex getCachedIndex() {
+        if (readFrom == null || changes != 0) {
+            return null;
+        }
+        CachedIndex c;
+        synchronized (INDEXES) {
+            c = INDEXES.get(readFrom);
+        }
+        return c != null && c.generation == readGeneration && c.lastModified == readModified ? c.index : null;
     }
 
     public Credential getCredential(SerializableSVNURL serializableURL, String realm) throws SVNException {
+        CredentialIndex i = getIndex();
         Credential cred;
         String url = serializableURL.getSVNURL().toDecodedString();
+        // stored keys that are prefixes of the URL, found in one pass
+        boolean[] prefixes = i.prefixesOf(url);
         // Try any shorter URL specification while looking for credentials
-        while ( (cred = get(getCredentialsKey(url, realm))) == null && url != null )
+        while ( (cred = get(i, prefixes, url, getCredentialsKey(url, realm))) == null && url != null )
         {
            int index = url.lastIndexOf('/');
            if(index >= 0 && index + 1 < url.length())
@@ -83,16 +227,20 @@ final class PerJobCredentialStore implements Saveable, RemotableSVNAuthenticatio
         }
         return cred;
     }
-    
-    
-    
 
-    public void acknowledgeAuthentication(String realm, Credential cred) {
-        try {
-            acknowledge(getCredentialsKey(url, realm), cred);
-        } catch (IOException e) {
-            LOGGER.log(INFO, Messages.PerJobCredentialStore_acknowledgeAuthentication_error(), e);
+    /**
+     * Looks up a key computed from a prefix of the URL.
+     */
+    private static Credential get(CredentialIndex i, boolean[] prefixes, String prefix, String key) {
+        // getCredentialsKey returns the prefix itself unless it rewrote it
+        if (prefix != null && key.equals(prefix) && !prefixes[prefix.length()]) {
+            return null;
         }
+        return i.get(key);
+    }
+
+    public void acknowledgeAuthentication(String realm, Credential cred) {
+        acknowledge(realm, getCredentialsKey(url, realm), cred);
     }
 
     /**
@@ -108,23 +256,113 @@ final class PerJobCredentialStore implements Saveable, RemotableSVNAuthenticatio
         return null == url ? realm : url.lastIndexOf("@") > 0 ? SubversionSCM.getUrlWithoutRevision(url) : url;
     }
 
-    private synchronized void acknowledge(String key, Credential cred) throws IOException {
-        Credential old = cred == null ? credentials.remove(key) : credentials.put(key, cred);
-        // save only if there was a change
-        if (old == null && cred == null) {
-            return;
+    private void acknowledge(String realm, String key, Credential cred) {
+        synchronized (this) {
+            Credential old = cred == null ? credentials.remove(key) : credentials.put(key, cred);
+            credentialIndex = null;
+            // save only if there was a change
+            if (old == null && cred == null) {
+                return;
+            }
+            if (old != null && cred != null && old.equals(cred)) {
+                return;
+            }
+            changes++;
+        }
+        // the change is visible to new stores of this job right away, and written a little later
+        scheduleSave(key, cred);
+        // nodes may have cached what this job had before
+        CredentialCache.invalidateEverywhere(realm);
+    }
+
+    /**
+     * Records a change for the next write, together with those of the other stores of the job.
+     */
+    private void scheduleSave(String key, Credential cred) {
+        File file = getXmlFile(project).getFile();
+        synchronized (PENDING) {
+            boolean idle = PENDING.isEmpty();
+            Pending pending = PENDING.get(file);
+            if (pending == null) {
+                pending = new Pending(project);
+                PENDING.put(file, pending);
+            }
+            pending.changes.put(key, cred);
+            if (idle) {
+                scheduleFlush();
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding {@link #PENDING}.
+     */
+    private static void scheduleFlush() {
+        if (writer == null) {
+            writer = new Timer("Subversion credential writer", true);
+        }
+        writer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, SAVE_DELAY);
+    }
+
+    /**
+     * Writes the changes that were acknowledged but not yet saved.
+     */
+    static void flush() {
+        Map<File, Pending> files;
+        Map<File, Map<String, Credential>> written = new HashMap<File, Map<String, Credential>>();
+        synchronized (PENDING) {
+            files = new HashMap<File, Pending>(PENDING);
+            for (Map.Entry<File, Pending> e : files.entrySet()) {
+                written.put(e.getKey(), new HashMap<String, Credential>(e.getValue().changes));
+            }
         }
-        if (old == null || cred == null || !old.equals(cred)) {
-            save();
+        for (Map.Entry<File, Pending> e : files.entrySet()) {
+            try {
+                // what is on disk with all the pending changes of the job on top
+                new PerJobCredentialStore(e.getValue().project, null).save();
+            } catch (IOException x) {
+                LOGGER.log(INFO, Messages.PerJobCredentialStore_acknowledgeAuthentication_error(), x);
+                continue;
+            }
+            synchronized (PENDING) {
+                // changes made while being written stay for the next round
+                Pending pending = PENDING.get(e.getKey());
+                for (Map.Entry<String, Credential> c : written.get(e.getKey()).entrySet()) {
+                    if (pending.changes.containsKey(c.getKey()) && pending.changes.get(c.getKey()) == c.getValue()) {
+                        pending.changes.remove(c.getKey());
+                    }
+                }
+                if (pending.changes.isEmpty()) {
+                    PENDING.remove(e.getKey());
+                }
+            }
+        }
+        synchronized (PENDING) {
+            if (!PENDING.isEmpty()) {
+                scheduleFlush();
+            }
         }
     }
 
+    /**
+     * Writes the credentials now. {@link XmlFile} writes to a temporary file and renames it over
+     * the old one, so a failed write leaves the old credentials in place.
+     */
     public synchronized void save() throws IOException {
         IS_SAVING.set(Boolean.TRUE);
         try {
             if (!credentials.isEmpty()) {
                 XmlFile xmlFile = getXmlFile(project);
                 xmlFile.write(this);
+                SAVES.incrementAndGet();
+                synchronized (INDEXES) {
+                    INDEXES.remove(xmlFile.getFile());
+                }
                 SaveableListener.fireOnChange(this, xmlFile);
             }
         } finally {
@@ -183,6 +421,17 @@ final class PerJobCredentialStore implements Saveable, RemotableSVNAuthenticatio
         return saveableListener;
     }
 
+    /**
+     * Writes what is still pending before Hudson goes down.
+     */
+    @Extension
+    public static class FlushOnShutdown extends ItemListener {
+        @Override
+        public void onBeforeShutdown() {
+            flush();
+        }
+    }
+
     @Extension
     public static class CredentialsSaveableListener extends SaveableListener {
 
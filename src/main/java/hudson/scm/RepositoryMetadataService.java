@@ -0,0 +1,295 @@
+package hudson.scm;
+
+import hudson.model.AbstractProject;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches what the master learns about repositories: the UUID and root of a location, the latest revision
+ * of a repository, and whether a path exists in it.
+ *
+ * <p>
+ * Entries are kept per project identity, since what a project can see depends on its credentials.
+ * UUIDs and roots are kept for {@link #INFO_TTL} seconds, latest revisions and node kinds for {@link #TTL}
+ * seconds, and at most {@link #MAX_ENTRIES} of each, least recently used first. Everything is forgotten when
+ * the global configuration or the stored credentials change. The paths of one repository are checked over
+ * a single session.
+ */
+class RepositoryMetadataService {
+    /**
+     * UUID and root of the repository of a location.
+     */
+    static final class Info {
+        final UUID uuid;
+        final SVNURL root;
+
+        Info(UUID uuid, SVNURL root) {
+            this.uuid = uuid;
+            this.root = root;
+        }
+    }
+
+    private static final class Entry<T> {
+        final T value;
+        final long expires;
+
+        Entry(T value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Entries that expire, least recently used first.
+     */
+    private static final class Cache<T> {
+        private final Map<String, Entry<T>> entries = new LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+        synchronized T get(String key) {
+            Entry<T> e = entries.get(key);
+            if (e == null) {
+                return null;
+            }
+            if (e.expires <= System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            return e.value;
+        }
+
+        synchronized void put(String key, T value, int ttl) {
+            if (ttl <= 0) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            // stale entries go first, so that they don't push out live ones
+            for (Iterator<Entry<T>> itr = entries.values().iterator(); itr.hasNext(); ) {
+                if (itr.next().expires <= now) {
+                    itr.remove();
+                }
+            }
+            entries.put(key, new Entry<T>(value, now + ttl * 1000L));
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+    }
+
+    private final SubversionSCM.DescriptorImpl descriptor;
+
+    /**
+     * Keyed by identity and location URL.
+     */
+    private final Cache<Info> infos = new Cache<Info>();
+    /**
+     * Keyed by identity and repository root.
+     */
+    private final Cache<Long> latest = new Cache<Long>();
+    /**
+     * Keyed by identity and URL.
+     */
+    private final Cache<SVNNodeKind> kinds = new Cache<SVNNodeKind>();
+
+    RepositoryMetadataService(SubversionSCM.DescriptorImpl descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * Gets the UUID and root of the repository of a location.
+     */
+    Info getInfo(AbstractProject context, SVNURL url) throws SVNException {
+        String key = SubversionSCM.DescriptorImpl.getIdentity(context) + '\n' + url;
+        Info info = infos.get(key);
+        if (info != null) {
+            return info;
+        }
+        SVNRepository repository = openRepository(context, url);
+        try {
+            repository.testConnection(); // make sure values are fetched
+            return getInfo(key, repository);
+        } finally {
+            releaseRepository(repository);
+        }
+    }
+
+    /**
+     * Checks what is at a URL at the latest revision, as {@link SVNRepository#checkPath(String, long)} does.
+     */
+    SVNNodeKind getNodeKind(AbstractProject context, SVNURL url) throws SVNException {
+        List<SVNURL> urls = new ArrayList<SVNURL>(1);
+        urls.add(url);
+        Map<SVNURL, SVNException> failures = new LinkedHashMap<SVNURL, SVNException>();
+        SVNNodeKind kind = check(context, urls, failures).get(url);
+        if (kind == null) {
+            throw failures.get(url);
+        }
+        return kind;
+    }
+
+    /**
+     * Checks what is at each of the URLs at the latest revision, with one session per repository.
+     *
+     * @return
+     *      The kinds by URL. URLs that couldn't be checked are left out.
+     */
+    Map<SVNURL, SVNNodeKind> getNodeKinds(AbstractProject context, List<SVNURL> urls) {
+        return check(context, urls, new LinkedHashMap<SVNURL, SVNException>());
+    }
+
+    /**
+     * @param failures
+     *      Receives why the URLs that are left out of the result couldn't be checked.
+     */
+    private Map<SVNURL, SVNNodeKind> check(AbstractProject context, List<SVNURL> urls,
+                                           Map<SVNURL, SVNException> failures) {
+        String identity = SubversionSCM.DescriptorImpl.getIdentity(context);
+        Map<SVNURL, SVNNodeKind> result = new LinkedHashMap<SVNURL, SVNNodeKind>();
+        List<SVNURL> pending = new ArrayList<SVNURL>();
+        for (SVNURL url : urls) {
+            SVNNodeKind kind = kinds.get(identity + '\n' + url);
+            if (kind != null) {
+                result.put(url, kind);
+            } else if (!pending.contains(url)) {
+                pending.add(url);
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            SVNURL first = pending.remove(0);
+            List<SVNURL> batch = new ArrayList<SVNURL>();
+            batch.add(first);
+            SVNRepository repository = null;
+            try {
+                repository = openRepository(context, first);
+                repository.testConnection();
+                SVNURL root = getInfo(identity + '\n' + first, repository).root;
+
+                String latestKey = identity + '\n' + root;
+                Long revision = latest.get(latestKey);
+                if (revision == null) {
+                    revision = Long.valueOf(repository.getLatestRevision());
+                    latest.put(latestKey, revision, TTL);
+                }
+
+                // the other URLs of the same repository go over the same session
+                for (Iterator<SVNURL> itr = pending.iterator(); itr.hasNext(); ) {
+                    SVNURL url = itr.next();
+                    if (getPath(url, root) != null) {
+                        batch.add(url);
+                        itr.remove();
+                    }
+                }
+                for (SVNURL url : batch) {
+                    SVNNodeKind kind = repository.checkPath(getPath(url, root), revision.longValue());
+                    kinds.put(identity + '\n' + url, kind, TTL);
+                    result.put(url, kind);
+                }
+            } catch (SVNException e) {
+                LOGGER.log(Level.FINE, "Failed to check " + first, e);
+                for (SVNURL url : batch) {
+                    if (!result.containsKey(url)) {
+                        failures.put(url, e);
+                    }
+                }
+            } finally {
+                if (repository != null) {
+                    releaseRepository(repository);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Info getInfo(String key, SVNRepository repository) throws SVNException {
+        Info info = new Info(UUID.fromString(repository.getRepositoryUUID(false)), repository.getRepositoryRoot(false));
+        infos.put(key, info, INFO_TTL);
+        return info;
+    }
+
+    SVNRepository openRepository(AbstractProject context, SVNURL url) throws SVNException {
+        return descriptor.borrowRepository(context, url);
+    }
+
+    void releaseRepository(SVNRepository repository) {
+        descriptor.releaseRepository(repository);
+    }
+
+    /**
+     * Forgets everything. Called when the global configuration or the stored credentials change.
+     */
+    void clear() {
+        infos.clear();
+        latest.clear();
+        kinds.clear();
+    }
+
+    /**
+     * Number of node kinds cached.
+     */
+    int getNodeKindCount() {
+        return kinds.size();
+    }
+
+    /**
+     * Gets the path of a URL relative to the repository root, starting with '/',
+     * or null if the URL is not in that repository.
+     */
+    static String getPath(SVNURL url, SVNURL root) {
+        if (!url.getProtocol().equals(root.getProtocol()) || !url.getHost().equals(root.getHost())
+            || url.getPort() != root.getPort()) {
+            return null;
+        }
+        String path = url.getPath(), rootPath = root.getPath();
+        if (!path.startsWith(rootPath)) {
+            return null;
+        }
+        String rest = path.substring(rootPath.length());
+        if (rest.length() == 0) {
+            return "/";
+        }
+        if (!rest.startsWith("/")) {
+            // "/repo" is not the root of "/repository"
+            return rootPath.endsWith("/") ? '/' + rest : null;
+        }
+        return rest;
+    }
+
+    /**
+     * Seconds the latest revision of a repository and the kinds of its paths are reused.
+     * 0 to always ask the repository.
+     */
+    public static int TTL = Integer.getInteger(RepositoryMetadataService.class.getName() + ".ttl", 30);
+
+    /**
+     * Seconds the UUID and root of a location are reused.
+     */
+    public static int INFO_TTL = Integer.getInteger(RepositoryMetadataService.class.getName() + ".infoTtl", 600);
+
+    /**
+     * Maximum number of UUIDs and roots, latest revisions and node kinds kept, each.
+     */
+    public static int MAX_ENTRIES = Integer.getInteger(RepositoryMetadataService.class.getName() + ".maxEntries", 1000);
+
+    private static final Logger LOGGER = Logger.getLogger(RepositoryMetadataService.class.getName());
+}
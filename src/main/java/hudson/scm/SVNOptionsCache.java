@@ -0,0 +1,151 @@
+package hudson.scm;
+
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNOptions;
+import org.tmatesoft.svn.core.internal.wc.SVNCompositeConfigFile;
+import org.tmatesoft.svn.core.internal.wc.SVNConfigFile;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * The Subversion runtime configuration of this node (the <tt>config</tt> and <tt>servers</tt> files
+ * in <tt>~/.subversion</tt>), parsed once and shared by all the client managers.
+ *
+ * <p>
+ * The files are checked for changes at most every {@link #CHECK_INTERVAL} seconds, and parsed again
+ * into a new snapshot if they changed. In between, getting the options doesn't touch the disk.
+ * {@link DefaultSVNOptions} keeps state of its own and isn't safe to share between threads, so every caller
+ * gets new options, backed by the parsed configuration of the current snapshot.
+ *
+ * <p>
+ * Only the <tt>config</tt> file is shared this way. The <tt>servers</tt> file is still parsed by each
+ * authentication manager, which SVNKit gives a host options provider of its own; it only serves as
+ * part of the change check here.
+ */
+final class SVNOptionsCache {
+    private static final class Snapshot {
+        final File configDir;
+        final SVNCompositeConfigFile config;
+        final long configModified, serversModified;
+        /**
+         * When the files were last found unchanged.
+         */
+        volatile long checked;
+
+        Snapshot(File configDir, long configModified, long serversModified, long checked) {
+            this.configDir = configDir;
+            SVNConfigFile.createDefaultConfiguration(configDir);
+            this.config = new SharedConfigFile(
+                new SVNConfigFile(new File(SVNFileUtil.getSystemConfigurationDirectory(), "config")),
+                new SVNConfigFile(new File(configDir, "config")));
+            this.configModified = configModified;
+            this.serversModified = serversModified;
+            this.checked = checked;
+        }
+    }
+
+    /**
+     * Parsed configuration shared by the options of a snapshot. The parsed files are read and reloaded lazily,
+     * so all access is serialized.
+     */
+    private static final class SharedConfigFile extends SVNCompositeConfigFile {
+        SharedConfigFile(SVNConfigFile systemFile, SVNConfigFile userFile) {
+            super(systemFile, userFile);
+        }
+
+        @Override
+        public synchronized String getPropertyValue(String groupName, String propertyName) {
+            return super.getPropertyValue(groupName, propertyName);
+        }
+
+        @Override
+        public synchronized Map getProperties(String groupName) {
+            return super.getProperties(groupName);
+        }
+
+        @Override
+        public synchronized void setPropertyValue(String groupName, String propertyName, String propertyValue,
+                                                  boolean save) {
+            super.setPropertyValue(groupName, propertyName, propertyValue, save);
+        }
+    }
+
+    /**
+     * Options that read the parsed configuration of a snapshot instead of parsing the files again.
+     */
+    static final class SnapshotOptions extends DefaultSVNOptions {
+        private final SVNCompositeConfigFile config;
+
+        SnapshotOptions(Snapshot s) {
+            super(s.configDir, true);
+            this.config = s.config;
+        }
+
+        @Override
+        public SVNCompositeConfigFile getConfigFile() {
+            return config;
+        }
+    }
+
+    /**
+     * Configuration directory, or null for the default one.
+     */
+    private final File configDir;
+
+    private volatile Snapshot snapshot;
+
+    SVNOptionsCache() {
+        this(null);
+    }
+
+    SVNOptionsCache(File configDir) {
+        this.configDir = configDir;
+    }
+
+    /**
+     * New read-only options from the default configuration directory, as
+     * {@link SVNWCUtil#createDefaultOptions(boolean)} would create. Each client manager or session gets its own.
+     */
+    DefaultSVNOptions getOptions() {
+        return new SnapshotOptions(current());
+    }
+
+    /**
+     * Same as {@link SVNWCUtil#getDefaultConfigurationDirectory()}.
+     */
+    File getConfigDirectory() {
+        return current().configDir;
+    }
+
+    private Snapshot current() {
+        Snapshot s = snapshot;
+        long now = System.currentTimeMillis();
+        if (s != null && now - s.checked < CHECK_INTERVAL * 1000L) {
+            return s;
+        }
+        synchronized (this) {
+            s = snapshot;
+            if (s != null && now - s.checked < CHECK_INTERVAL * 1000L) {
+                return s;
+            }
+            File dir = configDir != null ? configDir : SVNWCUtil.getDefaultConfigurationDirectory();
+            long config = new File(dir, "config").lastModified();
+            long servers = new File(dir, "servers").lastModified();
+            if (s != null && s.configDir.equals(dir) && s.configModified == config && s.serversModified == servers) {
+                s.checked = now;
+            } else {
+                snapshot = s = new Snapshot(dir, config, servers, now);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Seconds between checks of the configuration files for changes. 0 to check every time.
+     */
+    public static int CHECK_INTERVAL = Integer.getInteger(SVNOptionsCache.class.getName() + ".checkInterval", 10);
+
+    static final SVNOptionsCache INSTANCE = new SVNOptionsCache();
+}
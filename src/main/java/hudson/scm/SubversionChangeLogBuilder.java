@@ -28,6 +28,7 @@ import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.model.Hudson;
 import hudson.scm.SubversionSCM.ModuleLocation;
+import hudson.scm.subversion.SparseProfile;
 import hudson.FilePath;
 import hudson.util.IOException2;
 import hudson.remoting.VirtualChannel;
@@ -97,11 +98,21 @@ public final class SubversionChangeLogBuilder {
             logHandler.startDocument();
 
             for (ModuleLocation l : scm.getLocations(build)) {
-                changelogFileCreated |= buildModule(l.getURL(), svnlc, logHandler);
+                SparseProfile profile = l.getParsedSparseProfile();
+                if (profile == null) {
+                    changelogFileCreated |= buildModule(l.getURL(), svnlc, logHandler);
+                } else {
+                    changelogFileCreated |= buildModule(l.getURL(), svnlc,
+                        new SparseLogHandler(logHandler, profile, getRepositoryPath(l)));
+                }
             }
             for(SubversionSCM.External ext : externals) {
-                changelogFileCreated |= buildModule(
-                        getUrlForPath(build.getWorkspace().child(ext.path)), svnlc, logHandler);
+                String url = getUrlForExternal(build.getWorkspace(), ext);
+                if (url == null) {
+                    // not a working copy, for example when exported. this is the URL it was fetched from
+                    url = ext.url;
+                }
+                changelogFileCreated |= buildModule(url, svnlc, logHandler);
             }
 
             if(changelogFileCreated) {
@@ -114,15 +125,23 @@ public final class SubversionChangeLogBuilder {
         }
     }
 
-    private String getUrlForPath(FilePath path) throws IOException, InterruptedException {
-        return path.act(new GetUrlForPath(createAuthenticationProvider(build.getProject())));
+    private String getUrlForExternal(FilePath ws, SubversionSCM.External ext) throws IOException, InterruptedException {
+        return ws.act(new GetUrlForPath(createAuthenticationProvider(build.getProject()), ext));
     }
 
     private ISVNAuthenticationProvider createAuthenticationProvider(AbstractProject context) {
         return Hudson.getInstance().getDescriptorByType(SubversionSCM.DescriptorImpl.class).createAuthenticationProvider(context);
     }
 
-    private boolean buildModule(String url, SVNLogClient svnlc, SVNXMLLogHandler logHandler) throws IOException2 {
+    private String getRepositoryPath(ModuleLocation l) throws IOException2 {
+        try {
+            return SparseProfile.getRepositoryPath(l.getSVNURL(), l.getRepositoryRoot(build.getProject()));
+        } catch (SVNException e) {
+            throw new IOException2("failed to find the repository root of " + l.getURL(), e);
+        }
+    }
+
+    private boolean buildModule(String url, SVNLogClient svnlc, ISVNLogEntryHandler logHandler) throws IOException2 {
         PrintStream logger = listener.getLogger();
         Long prevRev = previousRevisions.get(url);
         if(prevRev==null) {
@@ -176,6 +195,28 @@ public final class SubversionChangeLogBuilder {
         }
     }
 
+    /**
+     * Filter {@link ISVNLogEntryHandler} that drops the revisions that didn't change anything
+     * in a sparse check out.
+     */
+    private static class SparseLogHandler implements ISVNLogEntryHandler {
+        private final ISVNLogEntryHandler core;
+        private final SparseProfile profile;
+        private final String base;
+
+        private SparseLogHandler(ISVNLogEntryHandler core, SparseProfile profile, String base) {
+            this.core = core;
+            this.profile = profile;
+            this.base = base;
+        }
+
+        public void handleLogEntry(SVNLogEntry logEntry) throws SVNException {
+            if (profile.isRelevant(logEntry, base)) {
+                core.handleLogEntry(logEntry);
+            }
+        }
+    }
+
     /**
      * Creates an identity transformer.
      */
@@ -198,12 +239,18 @@ public final class SubversionChangeLogBuilder {
 
     private static class GetUrlForPath implements FileCallable<String> {
         private final ISVNAuthenticationProvider authProvider;
+        /**
+         * Resolved against the workspace on the node, since its path can be absolute.
+         */
+        private final SubversionSCM.External external;
 
-        public GetUrlForPath(ISVNAuthenticationProvider authProvider) {
+        public GetUrlForPath(ISVNAuthenticationProvider authProvider, SubversionSCM.External external) {
             this.authProvider = authProvider;
+            this.external = external;
         }
 
-        public String invoke(File p, VirtualChannel channel) throws IOException {
+        public String invoke(File ws, VirtualChannel channel) throws IOException {
+            File p = external.getLocalDir(ws);
             final SVNClientManager manager = SubversionSCM.createSvnClientManager(authProvider);
             try {
                 final SVNWCClient svnwc = manager.getWCClient();
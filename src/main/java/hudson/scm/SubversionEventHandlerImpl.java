@@ -22,9 +22,16 @@ import org.tmatesoft.svn.core.wc.SVNEventAdapter;
 import org.tmatesoft.svn.core.wc.SVNStatusType;
 import org.tmatesoft.svn.core.wc.ISVNEventHandler;
 
+import hudson.scm.SubversionSCM.OutputMode;
+
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * {@link ISVNEventHandler} that emulates the SVN CLI behavior.
@@ -36,40 +43,74 @@ public class SubversionEventHandlerImpl extends SVNEventAdapter {
 
     protected final File baseDir;
 
+    private final OutputMode mode;
+
+    /**
+     * {@link #baseDir}, absolute and canonical, with '/' as the separator and a trailing '/'.
+     * Computed once, since events come by the thousands.
+     */
+    private final String absoluteBase, canonicalBase;
+
+    /**
+     * In {@link OutputMode#SUMMARY}, the number of paths per action since the last summary...
+     */
+    private final Map<String, Integer> counts = new TreeMap<String, Integer>();
+
+    /**
+     * ... and the first few of them.
+     */
+    private final List<String> firstPaths = new ArrayList<String>();
+
     public SubversionEventHandlerImpl(PrintStream out, File baseDir) {
-        this.out = out;
-        this.baseDir = baseDir;
+        this(out, baseDir, OutputMode.FULL);
     }
 
-    public void handleEvent(SVNEvent event, double progress) throws SVNException {
-        File file = event.getFile();
-        String path = null;
-        if (file != null) {
-            try {
-                path = getRelativePath(file);
-            } catch (IOException e) {
-                throw new SVNException(SVNErrorMessage.create(SVNErrorCode.FS_GENERAL), e);
-            }
-            path = getLocalPath(path);
+    /**
+     * @param out
+     *      Unless the mode is {@link OutputMode#FULL}, this is written to in large chunks,
+     *      and only when {@link #flush()} is called.
+     */
+    public SubversionEventHandlerImpl(PrintStream out, File baseDir, OutputMode mode) {
+        this.out = mode == OutputMode.FULL ? out : new PrintStream(new BufferedOutputStream(out, BUFFER_SIZE), false);
+        this.baseDir = baseDir;
+        this.mode = mode;
+        this.absoluteBase = toPrefix(baseDir.getAbsolutePath());
+        String canonical;
+        try {
+            canonical = toPrefix(baseDir.getCanonicalPath());
+        } catch (IOException e) {
+            canonical = absoluteBase;
         }
+        this.canonicalBase = canonical;
+    }
 
+    /**
+     * Writes out what's been buffered so far.
+     */
+    public void flush() {
+        printSummary();
+        out.flush();
+    }
+
+    public void handleEvent(SVNEvent event, double progress) throws SVNException {
+        // the path is only computed for the events that print it
         SVNEventAction action = event.getAction();
 
         {// commit notifications
             if (action == SVNEventAction.COMMIT_ADDED) {
-                out.println("Adding         "+path);
+                out.println("Adding         "+getLocalPath(event));
                 return;
             }
             if (action == SVNEventAction.COMMIT_DELETED) {
-                out.println("Deleting       "+path);
+                out.println("Deleting       "+getLocalPath(event));
                 return;
             }
             if (action == SVNEventAction.COMMIT_MODIFIED) {
-                out.println("Sending        "+path);
+                out.println("Sending        "+getLocalPath(event));
                 return;
             }
             if (action == SVNEventAction.COMMIT_REPLACED) {
-                out.println("Replacing      "+path);
+                out.println("Replacing      "+getLocalPath(event));
                 return;
             }
             if (action == SVNEventAction.COMMIT_DELTA_SENT) {
@@ -117,19 +158,21 @@ public class SubversionEventHandlerImpl extends SVNEventAdapter {
             }
         } else if (action == SVNEventAction.UPDATE_COMPLETED) {
             // finished updating
+            printSummary();
             out.println("At revision " + event.getRevision());
+            out.flush();
             return;
         } else if (action == SVNEventAction.ADD){
-            out.println("A     " + path);
+            printPath("A", "A     " + getLocalPath(event));
             return;
         } else if (action == SVNEventAction.DELETE){
-            out.println("D     " + path);
+            printPath("D", "D     " + getLocalPath(event));
             return;
         } else if (action == SVNEventAction.LOCKED){
-            out.println("L     " + path);
+            printPath("L", "L     " + getLocalPath(event));
             return;
         } else if (action == SVNEventAction.LOCK_FAILED){
-            out.println("failed to lock    " + path);
+            out.println("failed to lock    " + getLocalPath(event));
             return;
         }
 
@@ -158,16 +201,84 @@ public class SubversionEventHandlerImpl extends SVNEventAdapter {
             // nothing to display here.
             return;
 
-        out.println(pathChangeType
+        printPath(!pathChangeType.equals(" ") ? pathChangeType
+                    : !propertiesChangeType.equals(" ") ? "properties " + propertiesChangeType : "broken locks",
+                pathChangeType
                 + propertiesChangeType
                 + lockLabel
                 + "       "
-                + path);
+                + getLocalPath(event));
+    }
+
+    /**
+     * Reports a path, unless the mode is {@link OutputMode#SUMMARY}, in which case it's only counted.
+     *
+     * @param action
+     *      What happened to the path, for the summary.
+     */
+    protected void printPath(String action, String line) {
+        if (mode != OutputMode.SUMMARY) {
+            out.println(line);
+            return;
+        }
+        Integer n = counts.get(action);
+        counts.put(action, n == null ? 1 : n + 1);
+        if (firstPaths.size() < SUMMARY_PATHS) {
+            firstPaths.add(line);
+        }
+    }
+
+    private void printSummary() {
+        if (counts.isEmpty()) {
+            return;
+        }
+        int total = 0;
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            total += e.getValue();
+            buf.append(buf.length() == 0 ? "" : ", ").append(e.getKey()).append(": ").append(e.getValue());
+        }
+        for (String line : firstPaths) {
+            out.println(line);
+        }
+        if (total > firstPaths.size()) {
+            out.println("... and " + (total - firstPaths.size()) + " more");
+        }
+        out.println(total + " paths (" + buf + ")");
+        counts.clear();
+        firstPaths.clear();
+    }
+
+    /**
+     * Path of the event's file relative to {@link #baseDir}, in the platform's form.
+     *
+     * @return null if the event has no file.
+     */
+    protected String getLocalPath(SVNEvent event) throws SVNException {
+        File file = event.getFile();
+        if (file == null) {
+            return null;
+        }
+        try {
+            return getLocalPath(getRelativePath(file));
+        } catch (IOException e) {
+            throw new SVNException(SVNErrorMessage.create(SVNErrorCode.FS_GENERAL), e);
+        }
     }
 
     public String getRelativePath(File file) throws IOException {
+        // svnkit reports the files under the path it was given, so this normally needs no file system access
+        String absolute = file.getAbsolutePath();
+        String fast = relativize(absolute, absoluteBase);
+        if (fast == null) {
+            fast = relativize(absolute, canonicalBase);
+        }
+        if (fast != null) {
+            return fast;
+        }
+
         String inPath = file.getCanonicalPath().replace(File.separatorChar, '/');
-        String basePath = baseDir.getCanonicalPath().replace(File.separatorChar, '/');
+        String basePath = canonicalBase.substring(0, canonicalBase.length() - 1);
         String commonRoot = getCommonAncestor(inPath, basePath);
         
         String relativePath = inPath;
@@ -184,6 +295,38 @@ public class SubversionEventHandlerImpl extends SVNEventAdapter {
         return relativePath;
     }
 
+    /**
+     * Strips the base from an absolute path, as long as the path is plainly under it.
+     *
+     * @return null if the path may be elsewhere, in which case it has to be canonicalized.
+     */
+    private static String relativize(String absolute, String base) {
+        String p = absolute.replace(File.separatorChar, '/');
+        int n = base.length();
+        if (p.length() == n - 1 && p.regionMatches(IGNORE_CASE, 0, base, 0, n - 1)) {
+            return "";
+        }
+        if (p.length() < n || !p.regionMatches(IGNORE_CASE, 0, base, 0, n)) {
+            return null;
+        }
+        if (p.indexOf("/.", n - 1) >= 0 && (p.contains("/./") || p.contains("/../") || p.endsWith("/.")
+            || p.endsWith("/.."))) {
+            return null;
+        }
+        int end = p.length();
+        while (end > n && p.charAt(end - 1) == '/') {
+            end--;
+        }
+        return p.substring(n, end);
+    }
+
+    private static String toPrefix(String path) {
+        String p = path.replace(File.separatorChar, '/');
+        return p.endsWith("/") ? p : p + '/';
+    }
+
+    private static final boolean IGNORE_CASE = SVNFileUtil.isWindows || SVNFileUtil.isOpenVMS;
+
     private static String getCommonAncestor(String p1, String p2) {
         if (SVNFileUtil.isWindows || SVNFileUtil.isOpenVMS) {
             String ancestor = SVNPathUtil.getCommonPathAncestor(p1.toLowerCase(), p2.toLowerCase());
@@ -213,6 +356,16 @@ public class SubversionEventHandlerImpl extends SVNEventAdapter {
         return p1.equals(p2);
     }
 
+    /**
+     * Size of the buffer in front of the console, unless the mode is {@link OutputMode#FULL}.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Number of paths written out in {@link OutputMode#SUMMARY}.
+     */
+    public static int SUMMARY_PATHS = Integer.getInteger(SubversionEventHandlerImpl.class.getName() + ".summaryPaths", 20);
+
     public static String getLocalPath(String path) {
         path = path.replace('/', File.separatorChar);
         if ("".equals(path)) {
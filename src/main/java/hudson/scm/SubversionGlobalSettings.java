@@ -0,0 +1,114 @@
+package hudson.scm;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Hudson;
+import hudson.model.Hudson.MasterComputer;
+import hudson.model.TaskListener;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+import hudson.scm.SubversionSCM.OutputMode;
+import hudson.scm.SubversionSCM.RevisionPolicy;
+import hudson.slaves.ComputerListener;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Snapshot of the global Subversion settings of the master, as seen by a slave.
+ *
+ * <p>
+ * The master sends the snapshot to a slave when it connects, and again to every slave when the global
+ * configuration is saved, so code running on a slave can read the settings without calling back.
+ */
+public final class SubversionGlobalSettings implements Serializable {
+    public final int workspaceFormat;
+    public final RevisionPolicy revisionPolicy;
+    public final OutputMode outputMode;
+    /**
+     * {@link SubversionSCM#DEFAULT_TIMEOUT} of the master.
+     */
+    public final int timeout;
+
+    private SubversionGlobalSettings(SubversionSCM.DescriptorImpl d) {
+        this.workspaceFormat = d.getWorkspaceFormat();
+        this.revisionPolicy = d.getRevisionPolicy();
+        this.outputMode = d.getOutputMode();
+        this.timeout = SubversionSCM.DEFAULT_TIMEOUT;
+    }
+
+    /**
+     * The settings last received from the master.
+     */
+    private static volatile SubversionGlobalSettings pushed;
+
+    /**
+     * Gets the settings the master sent to this node.
+     *
+     * @return null on the master, or on a slave that hasn't received them yet.
+     */
+    public static SubversionGlobalSettings getPushed() {
+        return pushed;
+    }
+
+    /**
+     * Sends the current settings to all the connected slaves. Called on the master when they change.
+     */
+    static void pushEverywhere() {
+        Hudson h = Hudson.getInstance();
+        if (h == null) {
+            return;
+        }
+        SubversionGlobalSettings settings = new SubversionGlobalSettings(
+            h.getDescriptorByType(SubversionSCM.DescriptorImpl.class));
+        for (Computer c : h.getComputers()) {
+            VirtualChannel channel = c.getChannel();
+            if (channel == null || channel == MasterComputer.localChannel) {
+                continue;
+            }
+            try {
+                channel.callAsync(new PushTask(settings));
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to send the Subversion settings to " + c.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Sends the settings to a slave when it connects.
+     */
+    @Extension
+    public static final class PushOnConnect extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) throws IOException, InterruptedException {
+            VirtualChannel channel = c.getChannel();
+            Hudson h = Hudson.getInstance();
+            if (channel != null && channel != MasterComputer.localChannel && h != null) {
+                channel.call(new PushTask(new SubversionGlobalSettings(
+                    h.getDescriptorByType(SubversionSCM.DescriptorImpl.class))));
+            }
+        }
+    }
+
+    private static final class PushTask implements Callable<Void, RuntimeException> {
+        private final SubversionGlobalSettings settings;
+
+        PushTask(SubversionGlobalSettings settings) {
+            this.settings = settings;
+        }
+
+        public Void call() {
+            pushed = settings;
+            SubversionWorkspaceSelector.workspaceFormat = settings.workspaceFormat;
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(SubversionGlobalSettings.class.getName());
+}
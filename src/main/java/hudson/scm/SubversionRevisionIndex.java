@@ -0,0 +1,433 @@
+package hudson.scm;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.AtomicFileWriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only index of the revisions recorded by each build of a project.
+ *
+ * <p>
+ * {@link SubversionSCM} writes <tt>revision.txt</tt> into every build directory. Finding the closest
+ * build that has such a file, or finding which build first contained a given revision, means loading
+ * build records one by one. This index keeps the same information in a single file under the project
+ * root directory, with one <tt>build number, URL, revision</tt> line per module, and holds a sorted
+ * view of it in memory.
+ *
+ * <p>
+ * Records are appended to the file. Each record starts with a <tt>#build number</tt> line. If a build
+ * records its revisions twice, the last record wins, and a deleted build is forgotten by appending an
+ * empty record. The file is rewritten without the replaced records once they outnumber the live ones.
+ */
+public final class SubversionRevisionIndex {
+    /**
+     * Name of the index file in the project root directory.
+     */
+    public static final String FILE_NAME = "svnrevisions.idx";
+
+    private static final char SEPARATOR = '\t';
+
+    private static final char RECORD = '#';
+
+    private final File file;
+
+    /**
+     * Build number to the revisions (URL to revision) that build recorded.
+     */
+    private final TreeMap<Integer, Map<String, Long>> byBuild = new TreeMap<Integer, Map<String, Long>>();
+
+    /**
+     * URL to the revisions recorded for it, each mapped to the lowest build number that recorded it.
+     */
+    private final Map<String, TreeMap<Long, Integer>> byUrl = new HashMap<String, TreeMap<Long, Integer>>();
+
+    private boolean loaded;
+
+    /**
+     * False once a build failed to be recorded, so that the index no longer knows every build.
+     */
+    private boolean complete = true;
+
+    /**
+     * Number of records in the file that a later record replaced.
+     */
+    private int garbage;
+
+    SubversionRevisionIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the index of the given project.
+     */
+    public static SubversionRevisionIndex of(AbstractProject<?, ?> project) {
+        File f = new File(project.getRootDir(), FILE_NAME);
+        synchronized (INDICES) {
+            SubversionRevisionIndex index = INDICES.get(f);
+            if (index == null) {
+                index = new SubversionRevisionIndex(f);
+                INDICES.put(f, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Records the revisions checked out by the given build.
+     */
+    public synchronized void record(int buildNumber, Map<String, Long> revisions) throws IOException {
+        load();
+        try {
+            append(buildNumber, revisions);
+        } catch (IOException e) {
+            markIncomplete();
+            throw e;
+        }
+        // a build that records again replaces what it recorded before
+        if (remove(Integer.valueOf(buildNumber))) {
+            garbage++;
+        }
+        for (Entry<String, Long> e : revisions.entrySet()) {
+            add(buildNumber, e.getKey(), e.getValue().longValue());
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Forgets what a deleted build recorded.
+     */
+    public synchronized void forget(int buildNumber) throws IOException {
+        load();
+        if (!byBuild.containsKey(Integer.valueOf(buildNumber))) {
+            return;
+        }
+        append(buildNumber, Collections.<String, Long>emptyMap());
+        remove(Integer.valueOf(buildNumber));
+        garbage++;
+        compactIfNeeded();
+    }
+
+    /**
+     * Returns false if a build may be missing from the index, in which case the revision files of
+     * the builds have to be consulted instead.
+     */
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    private void append(int buildNumber, Map<String, Long> revisions) throws IOException {
+        PrintWriter w = new PrintWriter(new FileOutputStream(file, true));
+        try {
+            write(w, buildNumber, revisions);
+            if (w.checkError()) {
+                throw new IOException("Failed to write " + file);
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    private static void write(PrintWriter w, int buildNumber, Map<String, Long> revisions) {
+        w.println(String.valueOf(RECORD) + buildNumber);
+        for (Entry<String, Long> e : revisions.entrySet()) {
+            w.println(String.valueOf(buildNumber) + SEPARATOR + e.getKey() + SEPARATOR + e.getValue());
+        }
+    }
+
+    /**
+     * Gives up on the file after a build failed to be recorded. Deleting it keeps a restart from trusting
+     * it either: the builds recorded from then on are all newer than the missing one.
+     */
+    private void markIncomplete() {
+        complete = false;
+        if (file.exists() && !file.delete()) {
+            LOGGER.warning("Failed to delete " + file + ", which misses a build. Delete it by hand");
+        }
+    }
+
+    /**
+     * Rewrites the file with only the live records, once the replaced ones outnumber them.
+     */
+    private void compactIfNeeded() {
+        // an incomplete index holds builds the file no longer has, and must not write them back
+        if (garbage <= byBuild.size() || !complete) {
+            return;
+        }
+        try {
+            AtomicFileWriter w = new AtomicFileWriter(file);
+            try {
+                PrintWriter pw = new PrintWriter(w);
+                for (Entry<Integer, Map<String, Long>> e : byBuild.entrySet()) {
+                    write(pw, e.getKey().intValue(), e.getValue());
+                }
+                pw.flush();
+                w.commit();
+            } finally {
+                w.abort();
+            }
+            garbage = 0;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to compact " + file, e);
+        }
+    }
+
+    /**
+     * Gets the revisions recorded by the closest build at or before the given build number.
+     *
+     * @return null if no such build is in the index.
+     */
+    public synchronized Entry<Integer, Map<String, Long>> getClosest(int buildNumber) {
+        load();
+        Entry<Integer, Map<String, Long>> e = byBuild.floorEntry(Integer.valueOf(buildNumber));
+        if (e == null) {
+            return null;
+        }
+        return new SimpleImmutableEntry<Integer, Map<String, Long>>(e.getKey(),
+            Collections.unmodifiableMap(new HashMap<String, Long>(e.getValue())));
+    }
+
+    /**
+     * Gets the revisions recorded by the given build.
+     *
+     * @return empty map if the build is not in the index.
+     */
+    public synchronized Map<String, Long> getRevisions(int buildNumber) {
+        load();
+        Map<String, Long> m = byBuild.get(Integer.valueOf(buildNumber));
+        if (m == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(new HashMap<String, Long>(m));
+    }
+
+    /**
+     * Finds the first build whose workspace contained the given revision of the given URL,
+     * that is, the lowest build number that recorded the same or a later revision.
+     *
+     * @return null if no build recorded such a revision.
+     */
+    public synchronized Integer getFirstBuildContaining(String url, long revision) {
+        load();
+        TreeMap<Long, Integer> revisions = byUrl.get(url);
+        if (revision < 0 || revisions == null) {
+            return null;
+        }
+        Integer first = null;
+        for (Integer n : revisions.tailMap(Long.valueOf(revision), true).values()) {
+            if (first == null || n.intValue() < first.intValue()) {
+                first = n;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Returns true if nothing has been recorded yet.
+     */
+    public synchronized boolean isEmpty() {
+        load();
+        return byBuild.isEmpty();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            BufferedReader r = new BufferedReader(new FileReader(file));
+            try {
+                // build number -> last line recorded for it, for records written without a "#" line
+                Map<Integer, Integer> lastLine = new HashMap<Integer, Integer>();
+                int records = 0;
+                int lineNumber = 0;
+                String line;
+                while ((line = r.readLine()) != null) {
+                    lineNumber++;
+                    if (line.length() > 0 && line.charAt(0) == RECORD) {
+                        try {
+                            // a build recorded again replaces itself
+                            Integer n = Integer.valueOf(line.substring(1));
+                            remove(n);
+                            lastLine.put(n, Integer.valueOf(lineNumber));
+                            records++;
+                        } catch (NumberFormatException e) {
+                            LOGGER.log(Level.FINEST, "Error parsing line " + lineNumber + " of " + file, e);
+                        }
+                        continue;
+                    }
+                    int i = line.indexOf(SEPARATOR);
+                    int j = line.lastIndexOf(SEPARATOR);
+                    if (i < 0 || j <= i) {
+                        continue;   // perhaps a line truncated by a crash. ignore
+                    }
+                    try {
+                        Integer n = Integer.valueOf(line.substring(0, i));
+                        Integer prev = lastLine.put(n, Integer.valueOf(lineNumber));
+                        if (prev != null && prev.intValue() != lineNumber - 1) {
+                            remove(n);
+                        }
+                        add(n.intValue(), line.substring(i + 1, j), Long.parseLong(line.substring(j + 1)));
+                    } catch (NumberFormatException e) {
+                        LOGGER.log(Level.FINEST, "Error parsing line " + lineNumber + " of " + file, e);
+                    }
+                }
+                garbage = Math.max(0, records - byBuild.size());
+            } finally {
+                r.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+        }
+    }
+
+    /**
+     * Forgets what a build recorded.
+     *
+     * @return false if the build wasn't in the index.
+     */
+    private boolean remove(Integer buildNumber) {
+        Map<String, Long> old = byBuild.remove(buildNumber);
+        if (old == null) {
+            return false;
+        }
+        for (Entry<String, Long> e : old.entrySet()) {
+            TreeMap<Long, Integer> revisions = byUrl.get(e.getKey());
+            if (revisions == null || !buildNumber.equals(revisions.get(e.getValue()))) {
+                continue;
+            }
+            revisions.remove(e.getValue());
+            // the lowest other build that recorded the same revision, if any
+            for (Entry<Integer, Map<String, Long>> b : byBuild.entrySet()) {
+                if (e.getValue().equals(b.getValue().get(e.getKey()))) {
+                    revisions.put(e.getValue(), b.getKey());
+                    break;
+                }
+            }
+            if (revisions.isEmpty()) {
+                byUrl.remove(e.getKey());
+            }
+        }
+        return true;
+    }
+
+    private void add(int buildNumber, String url, long revision) {
+        Integer n = Integer.valueOf(buildNumber);
+        Map<String, Long> m = byBuild.get(n);
+        if (m == null) {
+            m = new HashMap<String, Long>();
+            byBuild.put(n, m);
+        }
+        m.put(url, Long.valueOf(revision));
+
+        TreeMap<Long, Integer> revisions = byUrl.get(url);
+        if (revisions == null) {
+            revisions = new TreeMap<Long, Integer>();
+            byUrl.put(url, revisions);
+        }
+        Long r = Long.valueOf(revision);
+        Integer first = revisions.get(r);
+        if (first == null || buildNumber < first.intValue()) {
+            revisions.put(r, n);
+        }
+    }
+
+    /**
+     * Forgets the index of a project that was deleted or renamed.
+     */
+    @Extension
+    public static final class Evictor extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            synchronized (INDICES) {
+                INDICES.remove(new File(item.getRootDir(), FILE_NAME));
+            }
+            evictMissing();
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            evictMissing();
+        }
+
+        /**
+         * Projects can go away along with their folder, so drop every index whose directory is gone.
+         */
+        private void evictMissing() {
+            synchronized (INDICES) {
+                for (Iterator<File> itr = INDICES.keySet().iterator(); itr.hasNext(); ) {
+                    if (!itr.next().getParentFile().exists()) {
+                        itr.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the revisions of a deleted build, such as one discarded by the log rotation.
+     */
+    @Extension
+    public static final class BuildEvictor extends RunListener<AbstractBuild> {
+        public BuildEvictor() {
+            super(AbstractBuild.class);
+        }
+
+        @Override
+        public void onDeleted(AbstractBuild build) {
+            File f = new File(build.getProject().getRootDir(), FILE_NAME);
+            if (!f.exists()) {
+                return;
+            }
+            try {
+                of(build.getProject()).forget(build.getNumber());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING,
+                    "Failed to update the revision index of " + build.getProject().getFullName(), e);
+            }
+        }
+    }
+
+    /**
+     * Maximum number of project indices kept in memory. The others are read again when needed.
+     */
+    public static int MAX_CACHED_INDICES =
+        Integer.getInteger(SubversionRevisionIndex.class.getName() + ".maxCachedIndices", 256);
+
+    /**
+     * Indices by file, least recently used first. Guarded by itself.
+     */
+    private static final Map<File, SubversionRevisionIndex> INDICES =
+        new LinkedHashMap<File, SubversionRevisionIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, SubversionRevisionIndex> eldest) {
+                return size() > MAX_CACHED_INDICES;
+            }
+        };
+
+    private static final Logger LOGGER = Logger.getLogger(SubversionRevisionIndex.class.getName());
+}
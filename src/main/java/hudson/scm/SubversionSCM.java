@@ -53,6 +53,10 @@ import hudson.scm.auth.ISVNAuthenticationOutcomeListener;
 import hudson.scm.subversion.Messages;
 import hudson.scm.subversion.WorkspaceUpdaterDescriptor;
 import hudson.scm.subversion.CheckoutUpdater;
+import hudson.scm.subversion.ExportManifest;
+import hudson.scm.subversion.RepositorySessionPool;
+import hudson.scm.subversion.SparseProfile;
+import hudson.scm.subversion.WorkingCopyState;
 import hudson.scm.subversion.UpdateUpdater;
 import hudson.scm.subversion.UpdateWithRevertUpdater;
 import hudson.scm.subversion.WorkspaceUpdater;
@@ -89,12 +93,15 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -118,7 +125,6 @@ import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 import org.tmatesoft.svn.core.ISVNLogEntryHandler;
-import org.tmatesoft.svn.core.SVNAuthenticationException;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -135,6 +141,7 @@ import org.tmatesoft.svn.core.internal.io.dav.http.DefaultHTTPConnectionFactory;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNOptions;
 import org.tmatesoft.svn.core.internal.wc.SVNExternal;
 import org.tmatesoft.svn.core.internal.wc.admin.SVNAdminAreaFactory;
 import org.tmatesoft.svn.core.io.SVNCapability;
@@ -231,6 +238,35 @@ public class SubversionSCM extends SCM implements Serializable {
         }
     }
 
+    /**
+     * How the progress of check outs and updates is written to the build console.
+     */
+    public enum OutputMode {
+        FULL("One line per file"),
+        BATCHED("One line per file, sent in chunks"),
+        SUMMARY("Counts per action and the first paths");
+
+        private String modeName;
+
+        /**
+         * Creates the mode.
+         *
+         * @param modeName mode name.
+         */
+        OutputMode(String modeName) {
+            this.modeName = modeName;
+        }
+
+        /**
+         * Returns the name of mode.
+         *
+         * @return the name of mode.
+         */
+        public String getModeName() {
+            return this.modeName;
+        }
+    }
+
     // No longer used but left for serialization compatibility
     @Deprecated
     private Boolean useUpdate;
@@ -651,6 +687,18 @@ public class SubversionSCM extends SCM implements Serializable {
         Map<String, Long> revisions = new HashMap<String, Long>(); // module -> revision
 
         if (findClosest) {
+            // the index answers this without loading every build in between, unless it missed a build
+            SubversionRevisionIndex index = SubversionRevisionIndex.of(build.getProject());
+            Entry<Integer, Map<String, Long>> closest = index.isComplete() ? index.getClosest(build.getNumber()) : null;
+            if (closest != null) {
+                AbstractBuild<?, ?> b = closest.getKey() == build.getNumber() ?
+                    build : build.getProject().getBuildByNumber(closest.getKey());
+                if (b != null && getRevisionFile(b).exists()) {
+                    revisions.putAll(closest.getValue());
+                    return revisions;
+                }
+                // the indexed build is gone. fall back to the slow way
+            }
             for (AbstractBuild<?, ?> b = build; b != null; b = b.getPreviousBuild()) {
                 if (getRevisionFile(b).exists()) {
                     build = b;
@@ -704,7 +752,8 @@ public class SubversionSCM extends SCM implements Serializable {
         File file = getExternalsFile(project);
         if (file.exists()) {
             try {
-                return (List<External>) new XmlFile(External.XSTREAM, file).read();
+                // files written by older versions may list an external more than once
+                return External.distinct((List<External>) new XmlFile(External.XSTREAM, file).read());
             } catch (IOException e) {
                 // in < 1.180 this file was a text file, so it may fail to parse as XML,
                 // in which case let's just fall back
@@ -734,16 +783,25 @@ public class SubversionSCM extends SCM implements Serializable {
 
         // write out the revision file
         PrintWriter w = new PrintWriter(new FileOutputStream(getRevisionFile(build)));
+        Map<String, Long> revisions = new HashMap<String, Long>();
         try {
             Map<String, SvnInfo> revMap = workspace.act(new BuildRevisionMapTask(build, this, listener, externals));
             for (Entry<String, SvnInfo> e : revMap.entrySet()) {
                 w.println(e.getKey() + '/' + e.getValue().revision);
+                revisions.put(e.getKey(), e.getValue().revision);
             }
             build.addAction(new SubversionTagAction(build, revMap.values()));
         } finally {
             w.close();
         }
 
+        // and the project-wide index of it
+        try {
+            SubversionRevisionIndex.of(build.getProject()).record(build.getNumber(), revisions);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to update the revision index of " + build.getProject().getFullName(), e);
+        }
+
         // write out the externals info
         new XmlFile(External.XSTREAM, getExternalsFile(build.getProject())).write(externals);
 
@@ -804,13 +862,23 @@ public class SubversionSCM extends SCM implements Serializable {
             this.revisionParameterAction = build.getAction(RevisionParameterAction.class);
             this.task = scm.getWorkspaceUpdater().createTask();
             this.revisionPolicy = (scm.getDescriptor() != null ? scm.getDescriptor().getRevisionPolicy() : null);
+            this.parallelLocations = (scm.getDescriptor() != null ? scm.getDescriptor().getParallelLocations() : 1);
+            this.fastWipe = (scm.getDescriptor() != null && scm.getDescriptor().isFastWipe());
+            this.referenceCacheSize = (scm.getDescriptor() != null ? scm.getDescriptor().getReferenceCacheSize() : 0);
+            Node node = build.getBuiltOn();
+            FilePath nodeRoot = node != null ? node.getRootPath() : null;
+            this.nodeRootDir = nodeRoot != null ? nodeRoot.getRemote() : null;
+            this.outputMode = (scm.getDescriptor() != null ? scm.getDescriptor().getOutputMode() : OutputMode.FULL);
         }
 
         public List<External> invoke(File ws, VirtualChannel channel) throws IOException, InterruptedException {
             manager = createSvnClientManager(authProvider);
             this.ws = ws;
             try {
-                List<External> externals = perform();
+                pinRevisions();
+
+                // parallel locations and nested externals may report the same external more than once
+                List<External> externals = External.distinct(perform());
 
                 checkClockOutOfSync();
 
@@ -830,20 +898,71 @@ public class SubversionSCM extends SCM implements Serializable {
             return delegateTo(task);
         }
 
+        /**
+         * With a revision policy by date, resolves the date to a revision number once per repository,
+         * so that all the locations and externals from the same repository come from one snapshot.
+         */
+        private void pinRevisions() {
+            if (revisionPolicy != RevisionPolicy.QUEUE_TIME && revisionPolicy != RevisionPolicy.BUILD_TIME) {
+                return;
+            }
+            pinnedRevisions = new HashMap<String, Long>();
+            for (ModuleLocation l : locations) {
+                // once a repository is pinned, its other locations get the number here
+                SVNRevision revision = getRevision(l);
+                if (revision.getDate() == null) {
+                    continue;
+                }
+                try {
+                    // owned by the client manager, which hands the same session to the check out
+                    SVNRepository repository = manager.createRepository(l.getSVNURL(), true);
+                    String root = repository.getRepositoryRoot(true).toDecodedString();
+                    long pinned = repository.getDatedRevision(revision.getDate());
+                    pinnedRevisions.put(root, Long.valueOf(pinned));
+                    listener.getLogger().println(
+                        "Using revision " + pinned + " of " + root + " as of " + revision.getDate());
+                } catch (SVNException e) {
+                    // the location will be resolved by date on its own, and fail there if it must
+                    LOGGER.log(Level.FINE, "Failed to resolve " + revision + " for " + l.getURL(), e);
+                }
+            }
+        }
+
+        /**
+         * Compares the time stamp of what was just checked out with the local clock.
+         *
+         * <p>
+         * The time stamp comes from the working copy, so this doesn't talk to the server. Each repository
+         * is checked at most once per {@link #CLOCK_CHECK_INTERVAL} on this node, and the outcome is reused
+         * by all its locations in between without even reading the working copy.
+         */
         private void checkClockOutOfSync() {
-            try {
-                for (ModuleLocation l : locations) {
-                    SVNDirEntry dir = manager.createRepository(l.getSVNURL(), true).info("/", -1);
-                    // see http://www.nabble.com/NullPointerException-in-SVN-Checkout-Update-td21609781.html that reported this being null.
-                    if (dir != null && dir.getDate() != null && dir.getDate().after(new Date())) {
+            long now = System.currentTimeMillis();
+            SVNWCClient svnWc = manager.getWCClient();
+            for (ModuleLocation l : locations) {
+                try {
+                    String key = l.getSVNURL().toString();
+                    ClockCheck check = getClockCheck(key);
+                    if (check == null || now - check.timestamp > CLOCK_CHECK_INTERVAL * 60 * 1000L) {
+                        SVNInfo info = svnWc.doInfo(new File(ws, l.getLocalDir()), SVNRevision.WORKING);
+                        // see http://www.nabble.com/NullPointerException-in-SVN-Checkout-Update-td21609781.html that reported this being null.
+                        Date date = info.getCommittedDate();
+                        check = new ClockCheck(now, date != null && date.getTime() > now);
+                        CLOCK_CHECKS.put(key, check);
+                        // the server clock is the same for every location of a repository
+                        if (info.getRepositoryRootURL() != null) {
+                            CLOCK_CHECKS.put(info.getRepositoryRootURL().toString(), check);
+                        }
+                    }
+                    if (check.outOfSync) {
+                        // the same for every location
                         listener.getLogger().println(Messages.SubversionSCM_ClockOutOfSync());
+                        return;
                     }
+                } catch (SVNException e) {
+                    // not a working copy, for example when exported
+                    LOGGER.log(Level.FINE, "Failed to estimate the remote time stamp", e);
                 }
-            } catch (SVNAuthenticationException e) {
-                // if we don't have access to '/', ignore. error
-                LOGGER.log(Level.FINE, "Failed to estimate the remote time stamp", e);
-            } catch (SVNException e) {
-                LOGGER.log(Level.INFO, "Failed to estimate the remote time stamp", e);
             }
         }
 
@@ -864,7 +983,15 @@ public class SubversionSCM extends SCM implements Serializable {
         SubversionWorkspaceSelector.syncWorkspaceFormatFromMaster();
         ISVNAuthenticationManager sam = new DefaultSVNAuthenticationManager();
         sam.setAuthenticationProvider(authProvider);
-        return SVNClientManager.newInstance(SVNWCUtil.createDefaultOptions(true), sam.getAuthenticationManager());
+        DefaultSVNOptions options = SVNOptionsCache.INSTANCE.getOptions();
+        String identity = authProvider instanceof DescriptorImpl.SVNAuthenticationProviderImpl
+            ? ((DescriptorImpl.SVNAuthenticationProviderImpl) authProvider).getIdentity() : null;
+        if (identity == null || RepositorySessionPool.DISABLED) {
+            return SVNClientManager.newInstance(options, sam.getAuthenticationManager());
+        }
+        // sessions outlive the client manager, and are reused by the next operation with the same credentials
+        return SVNClientManager.newInstance(options,
+            RepositorySessionPool.INSTANCE.lease(identity, sam.getAuthenticationManager(), options));
     }
 
     /**
@@ -949,7 +1076,8 @@ public class SubversionSCM extends SCM implements Serializable {
      */
     public static final class External implements Serializable {
         /**
-         * Relative path within the workspace where this <tt>svn:exteranls</tt> exist.
+         * Relative path within the workspace where this <tt>svn:exteranls</tt> exist, separated by '/'.
+         * Builds made by older versions may have recorded an absolute path instead.
          */
         public final String path;
 
@@ -989,6 +1117,51 @@ public class SubversionSCM extends SCM implements Serializable {
             return revision != -1;
         }
 
+        /**
+         * Gets the directory of this external in the given workspace.
+         */
+        public File getLocalDir(File ws) {
+            File f = new File(path);
+            return f.isAbsolute() ? f : new File(ws, path);
+        }
+
+        /**
+         * Removes the externals recorded more than once, keeping the first one of each path.
+         *
+         * @return the given list if there was nothing to remove.
+         */
+        public static List<External> distinct(List<External> externals) {
+            if (externals == null) {
+                return null;
+            }
+            Map<String, External> byPath = new LinkedHashMap<String, External>();
+            for (External e : externals) {
+                String key = normalize(e.path);
+                if (!byPath.containsKey(key)) {
+                    byPath.put(key, e);
+                }
+            }
+            return byPath.size() == externals.size() ? externals : new ArrayList<External>(byPath.values());
+        }
+
+        /**
+         * Puts a path in the form {@link #path} is recorded in: '/' as the separator,
+         * without "./" segments or a trailing '/'.
+         */
+        public static String normalize(String path) {
+            String p = path.replace('\\', '/');
+            while (p.startsWith("./")) {
+                p = p.substring(2);
+            }
+            while (p.contains("/./")) {
+                p = p.replace("/./", "/");
+            }
+            while (p.endsWith("/.") || (p.endsWith("/") && p.length() > 1)) {
+                p = p.substring(0, p.length() - (p.endsWith("/") ? 1 : 2));
+            }
+            return p;
+        }
+
         private static final long serialVersionUID = 1L;
 
         private static final XStream XSTREAM = new XStream2();
@@ -1038,23 +1211,47 @@ public class SubversionSCM extends SCM implements Serializable {
             Map<String/*module name*/, SvnInfo> revisions = new HashMap<String, SvnInfo>();
 
             final SVNClientManager manager = createSvnClientManager(authProvider);
+            // an exported workspace has no metadata to ask, but records what it got
+            final ExportManifest manifest = ExportManifest.load(ws);
+            final WorkingCopyState state = WorkingCopyState.load(ws);
             try {
                 final SVNWCClient svnWc = manager.getWCClient();
                 // invoke the "svn info"
                 for (ModuleLocation module : locations) {
+                    ExportManifest.Entry exported = manifest != null ? manifest.get(module.getLocalDir()) : null;
+                    if (exported != null) {
+                        revisions.put(exported.url, new SvnInfo(exported.url, exported.revision));
+                        continue;
+                    }
+                    File wc = new File(ws, module.getLocalDir());
                     try {
-                        SvnInfo info = new SvnInfo(
-                            svnWc.doInfo(new File(ws, module.getLocalDir()), SVNRevision.WORKING));
+                        SvnInfo info = state.get(module.getLocalDir(), wc);
+                        if (info == null) {
+                            info = new SvnInfo(svnWc.doInfo(wc, SVNRevision.WORKING));
+                            state.put(module.getLocalDir(), wc, info);
+                        }
                         revisions.put(info.url, info);
                     } catch (SVNException e) {
+                        state.forget(module.getLocalDir());
                         e.printStackTrace(listener.error("Failed to parse svn info for " + module.remote));
                     }
                 }
                 for (External ext : externals) {
+                    ExportManifest.Entry exported = manifest != null ? manifest.get(ext.path) : null;
+                    if (exported != null) {
+                        revisions.put(exported.url, new SvnInfo(exported.url, exported.revision));
+                        continue;
+                    }
+                    File wc = ext.getLocalDir(ws);
                     try {
-                        SvnInfo info = new SvnInfo(svnWc.doInfo(new File(ext.path), SVNRevision.WORKING));
+                        SvnInfo info = state.get(ext.path, wc);
+                        if (info == null) {
+                            info = new SvnInfo(svnWc.doInfo(wc, SVNRevision.WORKING));
+                            state.put(ext.path, wc, info);
+                        }
                         revisions.put(info.url, info);
                     } catch (SVNException e) {
+                        state.forget(ext.path);
                         e.printStackTrace(
                             listener.error("Failed to parse svn info for external " + ext.url + " at " + ext.path));
                     }
@@ -1063,6 +1260,7 @@ public class SubversionSCM extends SCM implements Serializable {
 
                 return revisions;
             } finally {
+                state.save();
                 manager.dispose();
             }
         }
@@ -1194,7 +1392,8 @@ public class SubversionSCM extends SCM implements Serializable {
                     if (!isRevisionSpecifiedInBuildLocation(url, moduleLocations)) {
                         try {
                             final SVNURL svnurl = SVNURL.parseURIDecoded(url);
-                            long nowRev = new SvnInfo(parseSvnInfo(svnurl, authProvider)).revision;
+                            SVNInfo info = parseSvnInfo(svnurl, authProvider);
+                            long nowRev = new SvnInfo(info).revision;
 
                             changes |= (nowRev > baseRev);
 
@@ -1202,8 +1401,11 @@ public class SubversionSCM extends SCM implements Serializable {
                                 .println(Messages.SubversionSCM_pollChanges_remoteRevisionAt(url, Long.valueOf(nowRev)));
                             revs.put(url, Long.valueOf(nowRev));
                             // make sure there's a change and it isn't excluded
+                            SparseProfile profile = getSparseProfile(url, moduleLocations);
+                            String profileBase = profile == null ? null
+                                : SparseProfile.getRepositoryPath(svnurl, info.getRepositoryRootURL());
                             if (logHandler.findNonExcludedChanges(svnurl,
-                                baseRev + 1, nowRev, authProvider)) {
+                                baseRev + 1, nowRev, authProvider, profile, profileBase)) {
                                 listener.getLogger().println(Messages.SubversionSCM_pollChanges_changedFrom(Long.valueOf(baseRev)));
                                 significantChanges = true;
                             }
@@ -1240,6 +1442,22 @@ public class SubversionSCM extends SCM implements Serializable {
         return false;
     }
 
+    /**
+     * Finds the sparse check out profile of the module location checked out from the given URL.
+     *
+     * @return null if the URL isn't checked out sparsely, for example because it's an external.
+     */
+    static SparseProfile getSparseProfile(String url, ModuleLocation[] locations) {
+        if (null != locations) {
+            for (ModuleLocation location : locations) {
+                if (url.equals(location.getURL())) {
+                    return location.getParsedSparseProfile();
+                }
+            }
+        }
+        return null;
+    }
+
     private static boolean isRevisionPresent(SVNRevision revision) {
         return revision != null && !(UNDEFINED_REVISION_VALUE.equals(revision.getName()));
     }
@@ -1258,6 +1476,12 @@ public class SubversionSCM extends SCM implements Serializable {
         private final String excludedRevprop = getExcludedRevpropNormalized();
         private final Pattern[] excludedCommitMessages = getExcludedCommitMessagesPatterns();
 
+        /**
+         * Sparse check out profile of the URL being checked, and the path of that URL in the repository.
+         */
+        private SparseProfile profile;
+        private String profileBase;
+
         private SVNLogHandler(TaskListener listener) {
             this.listener = listener;
         }
@@ -1271,15 +1495,33 @@ public class SubversionSCM extends SCM implements Serializable {
          */
         public boolean findNonExcludedChanges(SVNURL url, long from, long to, ISVNAuthenticationProvider authProvider)
             throws SVNException {
+            return findNonExcludedChanges(url, from, to, authProvider, null, null);
+        }
+
+        /**
+         * Checks it the revision range [from,to] has any changes that are not excluded via exclusions,
+         * nor outside the sparse check out profile.
+         *
+         * @param profile
+         *      Sparse check out profile of the URL. Null if the whole URL is checked out.
+         * @param profileBase
+         *      Path of the URL in the repository. See {@link SparseProfile#getRepositoryPath(SVNURL, SVNURL)}.
+         */
+        public boolean findNonExcludedChanges(SVNURL url, long from, long to, ISVNAuthenticationProvider authProvider,
+                                              SparseProfile profile, String profileBase)
+            throws SVNException {
             if (from > to) {
                 return false; // empty revision range, meaning no change
             }
 
             // if no exclusion rules are defined, don't waste time going through "svn log".
-            if (!hasExclusionRule()) {
+            if (!hasExclusionRule() && profile == null) {
                 return true;
             }
 
+            this.profile = profile;
+            this.profileBase = profileBase;
+
             final SVNClientManager manager = createSvnClientManager(authProvider);
             try {
                 manager.getLogClient().doLog(url, null, SVNRevision.UNDEFINED,
@@ -1366,10 +1608,27 @@ public class SubversionSCM extends SCM implements Serializable {
                 return false;
             }
 
+            // Only the paths in the sparse check out count
+            Set<String> paths = (Set<String>) changedPaths.keySet();
+            if (profile != null) {
+                paths = new HashSet<String>();
+                for (String path : (Set<String>) changedPaths.keySet()) {
+                    if (profile.includesRepositoryPath(profileBase, path)) {
+                        paths.add(path);
+                    }
+                }
+                if (paths.isEmpty()) {
+                    listener.getLogger().println(Messages.SubversionSCM_pollChanges_ignoredRevision(
+                        Long.valueOf(logEntry.getRevision()),
+                        Messages.SubversionSCM_pollChanges_ignoredRevision_sparse()));
+                    return false;
+                }
+            }
+
             // If there are included patterns, see which paths are included
             List<String> includedPaths = new ArrayList<String>();
             if (includedPatterns.length > 0) {
-                for (String path : (Set<String>) changedPaths.keySet()) {
+                for (String path : paths) {
                     for (Pattern pattern : includedPatterns) {
                         if (pattern.matcher(path).matches()) {
                             includedPaths.add(path);
@@ -1378,7 +1637,7 @@ public class SubversionSCM extends SCM implements Serializable {
                     }
                 }
             } else {
-                includedPaths = new ArrayList<String>(changedPaths.keySet());
+                includedPaths = new ArrayList<String>(paths);
             }
 
             // If no paths are included don't count this entry as a change
@@ -1461,6 +1720,11 @@ public class SubversionSCM extends SCM implements Serializable {
          */
         private final Map<String, Credential> credentials = new Hashtable<String, Credential>();
 
+        /**
+         * Snapshot of {@link #credentials} for lookups, rebuilt after a change. Null until needed.
+         */
+        private transient volatile CredentialIndex credentialIndex;
+
         /**
          * Stores name of Subversion revision property to globally exclude
          */
@@ -1479,6 +1743,28 @@ public class SubversionSCM extends SCM implements Serializable {
          */
         private boolean validateRemoteUpToVar = false;
 
+        /**
+         * Maximum number of module locations checked out or updated at the same time.
+         */
+        private int parallelLocations = 1;
+
+        /**
+         * When set to true, the workspace is wiped before a fresh check out by moving its contents
+         * aside and deleting them in the background.
+         */
+        private boolean fastWipe = false;
+
+        /**
+         * Disk budget, in megabytes, of the per-node cache of working copies used to seed fresh check outs.
+         * 0 disables the cache.
+         */
+        private long referenceCacheSize = 0;
+
+        /**
+         * How the progress of check outs and updates is written to the build console.
+         */
+        private OutputMode outputMode = OutputMode.FULL;
+
         /**
          * Stores {@link SVNAuthentication} for a single realm.
          * <p/>
@@ -1608,6 +1894,31 @@ public class SubversionSCM extends SCM implements Serializable {
         private transient final RemotableSVNAuthenticationProviderImpl remotableProvider
             = new RemotableSVNAuthenticationProviderImpl();
 
+        /**
+         * What we know about the repositories, so that every check doesn't need its own session.
+         */
+        private transient final RepositoryMetadataService metadata = new RepositoryMetadataService(this);
+
+        private CredentialIndex getCredentialIndex() {
+            CredentialIndex index = credentialIndex;
+            if (index == null) {
+                synchronized (credentials) {
+                    index = credentialIndex;
+                    if (index == null) {
+                        credentialIndex = index = new CredentialIndex(credentials);
+                    }
+                }
+            }
+            return index;
+        }
+
+        private void putCredential(String realm, Credential cred) {
+            synchronized (credentials) {
+                credentials.put(realm, cred);
+                credentialIndex = null;
+            }
+        }
+
         private final class RemotableSVNAuthenticationProviderImpl implements RemotableSVNAuthenticationProvider {
             public Credential getCredential(SerializableSVNURL serializableUrl, String realm) throws SVNException {
                 for (SubversionCredentialProvider p : SubversionCredentialProvider.all()) {
@@ -1617,21 +1928,11 @@ public class SubversionSCM extends SCM implements Serializable {
                         return c;
                     }
                 }
-                LOGGER.fine(String.format("getCredential(%s)=>%s", realm, credentials.get(realm)));
-                
-                Credential cred = credentials.get(realm);
                 // Strange! SVNit retun realm some time as <https://host:port> 
                 // other time <https://host:port> + description, so be defensive
                 //see bug 447041
-                if (cred == null){
-                    for (String key : credentials.keySet()){
-                        if (realm.contains(key)){
-                            cred = credentials.get(key);
-                            break;
-                        }
-                    }
-                }
-                
+                Credential cred = getCredentialIndex().getForRealm(realm);
+                LOGGER.fine(String.format("getCredential(%s)=>%s", realm, cred));
                 return cred;
             }
             
@@ -1667,10 +1968,26 @@ public class SubversionSCM extends SCM implements Serializable {
              */
             private Credential lastCredential;
 
+            /**
+             * Whose credentials these are, for {@link RepositorySessionPool}: the full name of the job,
+             * or the empty string for the system-wide credentials only. Null if unknown.
+             */
+            private final String identity;
+
             public SVNAuthenticationProviderImpl(RemotableSVNAuthenticationProvider local,
                                                  RemotableSVNAuthenticationProvider global) {
+                this(local, global, null);
+            }
+
+            public SVNAuthenticationProviderImpl(RemotableSVNAuthenticationProvider local,
+                                                 RemotableSVNAuthenticationProvider global, String identity) {
                 this.global = global;
                 this.local = local;
+                this.identity = identity;
+            }
+
+            String getIdentity() {
+                return identity;
             }
 
             /**
@@ -1689,7 +2006,14 @@ public class SubversionSCM extends SCM implements Serializable {
                     return null;
                 }
 
-                Credential cred = src.getCredential(new SerializableSVNURL(url), realm);
+                Credential cred;
+                if (src == local && identity == null) {
+                    cred = src.getCredential(new SerializableSVNURL(url), realm);
+                } else {
+                    // saves a round trip to the master for each challenge
+                    cred = CredentialCache.INSTANCE.getCredential(src, src == local ? "local:" + identity : "global",
+                        url, realm);
+                }
                 LOGGER.fine(
                     String.format("%s.requestClientAuthentication(%s,%s,%s)=>%s", debugName, kind, url, realm, cred));
                 this.lastCredential = cred;
@@ -1705,6 +2029,10 @@ public class SubversionSCM extends SCM implements Serializable {
                                                                  boolean authMayBeStored) {
 
                 try {
+                    if (previousAuth != null) {
+                        // what we had didn't work. maybe it has been changed on the master since
+                        CredentialCache.INSTANCE.invalidate(realm);
+                    }
                     SVNAuthentication auth = fromProvider(url, realm, kind, local, "local");
 
                     // first try the local credential, then the global credential.
@@ -1742,6 +2070,9 @@ public class SubversionSCM extends SCM implements Serializable {
                 if (accepted && local != null) {
                     local.acknowledgeAuthentication(realm, lastCredential);
                 }
+                if (!accepted) {
+                    CredentialCache.INSTANCE.invalidate(realm);
+                }
             }
 
             public int acceptServerAuthentication(SVNURL url, String realm, Object certificate,
@@ -1785,6 +2116,36 @@ public class SubversionSCM extends SCM implements Serializable {
             return validateRemoteUpToVar;
         }
 
+        /**
+         * Returns maximum number of module locations checked out or updated at the same time.
+         *
+         * @return number of locations, 1 if they are processed one after another.
+         */
+        public int getParallelLocations() {
+            return Math.max(1, parallelLocations);
+        }
+
+        public boolean isFastWipe() {
+            return fastWipe;
+        }
+
+        public long getReferenceCacheSize() {
+            return Math.max(0, referenceCacheSize);
+        }
+
+        /**
+         * Returns available choose for output mode option.
+         *
+         * @return available choose for output mode option.
+         */
+        public OutputMode[] getOutputModes() {
+            return OutputMode.values();
+        }
+
+        public OutputMode getOutputMode() {
+            return outputMode != null ? outputMode : OutputMode.FULL;
+        }
+
         /**
          * Returns available choose for revision policy option.
          *
@@ -1810,6 +2171,26 @@ public class SubversionSCM extends SCM implements Serializable {
                 req.getParameter("svn.global_excluded_revprop"));
             workspaceFormat = Integer.parseInt(req.getParameter("svn.workspaceFormat"));
             validateRemoteUpToVar = formData.containsKey("validateRemoteUpToVar");
+            fastWipe = formData.containsKey("fastWipe");
+
+            try {
+                referenceCacheSize = Math.max(0, Long.parseLong(req.getParameter("svn.referenceCacheSize")));
+            } catch (NumberFormatException e) {
+                referenceCacheSize = 0;
+            }
+
+            try {
+                parallelLocations = Math.max(1, Integer.parseInt(req.getParameter("svn.parallelLocations")));
+            } catch (NumberFormatException e) {
+                parallelLocations = 1;
+            }
+
+            try {
+                outputMode = req.getParameter("svn.outputMode") != null ? OutputMode.valueOf(
+                    req.getParameter("svn.outputMode")) : OutputMode.FULL;
+            } catch (IllegalArgumentException e) {
+                outputMode = OutputMode.FULL;
+            }
 
             try {
                 revisionPolicy = req.getParameter("svn.revisionPolicy") != null ? RevisionPolicy.valueOf(
@@ -1820,6 +2201,8 @@ public class SubversionSCM extends SCM implements Serializable {
 
             // Save configuration
             save();
+            SubversionGlobalSettings.pushEverywhere();
+            metadata.clear();
 
             return super.configure(req, formData);
         }
@@ -1851,7 +2234,8 @@ public class SubversionSCM extends SCM implements Serializable {
          */
         public ISVNAuthenticationProvider createAuthenticationProvider(AbstractProject<?, ?> inContextOf) {
             return new SVNAuthenticationProviderImpl(
-                inContextOf == null ? null : new PerJobCredentialStore(inContextOf, null), remotableProvider);
+                inContextOf == null ? null : new PerJobCredentialStore(inContextOf, null), remotableProvider,
+                getIdentity(inContextOf));
         }
 
         /**
@@ -1861,7 +2245,14 @@ public class SubversionSCM extends SCM implements Serializable {
          *             the project in which the subversion operation is performed.
          */
         public ISVNAuthenticationProvider createAuthenticationProvider() {
-            return new SVNAuthenticationProviderImpl(null, remotableProvider);
+            return new SVNAuthenticationProviderImpl(null, remotableProvider, getIdentity(null));
+        }
+
+        /**
+         * Whose credentials are used in the context of the given project.
+         */
+        static String getIdentity(AbstractProject<?, ?> inContextOf) {
+            return inContextOf == null ? "" : inContextOf.getFullName();
         }
 
         /**
@@ -1922,14 +2313,15 @@ public class SubversionSCM extends SCM implements Serializable {
                 // 3) if the authentication is successful, svnkit calls back acknowledgeAuthentication
                 //    (so we store the password info here)
                 repository = SVNRepositoryFactory.create(SVNURL.parseURIDecoded(url));
-                repository.setTunnelProvider(SVNWCUtil.createDefaultOptions(true));
+                repository.setTunnelProvider(SVNOptionsCache.INSTANCE.getOptions());
                 AuthenticationManagerImpl authManager = upc.new AuthenticationManagerImpl(logWriter) {
                     @Override
                     protected void onSuccess(String realm, Credential cred, Boolean overrideGlobal) {
                         if (overrideGlobal.booleanValue()) {
                             LOGGER.info("Persisted " + cred + " for " + realm);
-                            credentials.put(realm, cred);
+                            putCredential(realm, cred);
                             save();
+                            CredentialCache.invalidateEverywhere(realm);
                         }
                         if (upc.inContextOf != null) {
                             LOGGER.info("Persisted " + cred + " for " + url);
@@ -1948,14 +2340,18 @@ public class SubversionSCM extends SCM implements Serializable {
                 
                 if (upc.getOverrideGlobal().booleanValue()) {
                 	LOGGER.info("Persisted " + cred + " for " + realm);
-                	credentials.put(realm, cred);
+                	putCredential(realm, cred);
                 	save();
+                	CredentialCache.invalidateEverywhere(realm);
                 }
                 
                 if (upc.inContextOf != null) {
                 	LOGGER.info("Persisted " + cred + " for " + url);
                 	new PerJobCredentialStore(upc.inContextOf, url).acknowledgeAuthentication(realm, cred);
                 }
+                // pooled sessions are still authenticated with the old credentials, and may see more now
+                RepositorySessionPool.INSTANCE.clear();
+                metadata.clear();
             } finally {
                 if (repository != null) {
                     repository.closeSession();
@@ -2014,7 +2410,7 @@ public class SubversionSCM extends SCM implements Serializable {
 
                 SVNRepository repository = null;
                 try {
-                    repository = getRepository(context, repoURL);
+                    repository = borrowRepository(context, repoURL);
                     long rev = repository.getLatestRevision();
                     // now go back the tree and find if there's anything that exists
                     String repoPath = getRelativePath(repoURL, repository);
@@ -2047,7 +2443,7 @@ public class SubversionSCM extends SCM implements Serializable {
                         Messages.SubversionSCM_doCheckRemote_badPath(repoPath));
                 } finally {
                     if (repository != null) {
-                        repository.closeSession();
+                        releaseRepository(repository);
                     }
                 }
             } catch (SVNException e) {
@@ -2065,26 +2461,49 @@ public class SubversionSCM extends SCM implements Serializable {
             }
         }
 
+        /**
+         * Checks what is at the URL at the latest revision. The answer may be up to
+         * {@link RepositoryMetadataService#TTL} seconds old.
+         */
         public SVNNodeKind checkRepositoryPath(AbstractProject context, SVNURL repoURL) throws SVNException {
-            SVNRepository repository = null;
-
-            try {
-                repository = getRepository(context, repoURL);
-                repository.testConnection();
+            return metadata.getNodeKind(context, repoURL);
+        }
 
-                long rev = repository.getLatestRevision();
-                String repoPath = getRelativePath(repoURL, repository);
-                return repository.checkPath(repoPath, rev);
-            } finally {
-                if (repository != null) {
-                    repository.closeSession();
-                }
-            }
+        RepositoryMetadataService getMetadataService() {
+            return metadata;
         }
 
+        /**
+         * Opens a new session to the repository. The caller closes it.
+         */
         protected SVNRepository getRepository(AbstractProject context, SVNURL repoURL) throws SVNException {
             SVNRepository repository = SVNRepositoryFactory.create(repoURL);
+            repository.setTunnelProvider(SVNOptionsCache.INSTANCE.getOptions());
+            repository.setAuthenticationManager(createAuthenticationManager(context));
+
+            return repository;
+        }
+
+        /**
+         * Gets a session to the repository from {@link RepositorySessionPool}.
+         * Give it back with {@link #releaseRepository(SVNRepository)} instead of closing it.
+         */
+        SVNRepository borrowRepository(AbstractProject context, SVNURL repoURL) throws SVNException {
+            if (RepositorySessionPool.DISABLED) {
+                return getRepository(context, repoURL);
+            }
+            return RepositorySessionPool.INSTANCE.borrow(getIdentity(context), repoURL,
+                createAuthenticationManager(context), SVNOptionsCache.INSTANCE.getOptions(), null);
+        }
+
+        /**
+         * Gives back a session obtained from {@link #borrowRepository(AbstractProject, SVNURL)}.
+         */
+        void releaseRepository(SVNRepository repository) {
+            RepositorySessionPool.INSTANCE.release(repository);
+        }
 
+        private ISVNAuthenticationManager createAuthenticationManager(AbstractProject context) {
             ISVNAuthenticationManager sam = new DefaultSVNAuthenticationManager();
             sam = new FilterSVNAuthenticationManager(sam) {
                 // If there's no time out, the blocking read operation may hang forever, because TCP itself
@@ -2100,10 +2519,7 @@ public class SubversionSCM extends SCM implements Serializable {
                 }
             };
             sam.setAuthenticationProvider(createAuthenticationProvider(context));
-            repository.setTunnelProvider(SVNWCUtil.createDefaultOptions(true));
-            repository.setAuthenticationManager(sam.getAuthenticationManager());
-
-            return repository;
+            return sam.getAuthenticationManager();
         }
 
         public static String getRelativePath(SVNURL repoURL, SVNRepository repository) throws SVNException {
@@ -2176,6 +2592,21 @@ public class SubversionSCM extends SCM implements Serializable {
             return doCheckExcludedRegions(value);
         }
 
+        /**
+         * Validates the sparse check out profile.
+         *
+         * @param value value to validate.
+         * @return {@link FormValidation}.
+         */
+        public FormValidation doCheckSparseProfile(@QueryParameter String value) {
+            try {
+                SparseProfile.parse(value);
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
         /**
          * Regular expression for matching one username. Matches 'windows' names ('DOMAIN&#92;user') and
          * 'normal' names ('user'). Where user (and DOMAIN) has one or more characters in 'a-zA-Z_0-9-.')
@@ -2262,13 +2693,13 @@ public class SubversionSCM extends SCM implements Serializable {
 
                 SVNRepository repository = null;
                 try {
-                    repository = getRepository(context, repoURL);
+                    repository = borrowRepository(context, repoURL);
                     if (repository.hasCapability(SVNCapability.LOG_REVPROPS)) {
                         return FormValidation.ok();
                     }
                 } finally {
                     if (repository != null) {
-                        repository.closeSession();
+                        releaseRepository(repository);
                     }
                 }
             } catch (SVNException e) {
@@ -2300,26 +2731,34 @@ public class SubversionSCM extends SCM implements Serializable {
     public boolean repositoryLocationsNoLongerExist(AbstractBuild<?, ?> build, TaskListener listener) {
         PrintStream out = listener.getLogger();
 
+        List<ModuleLocation> locations = new ArrayList<ModuleLocation>();
+        List<SVNURL> urls = new ArrayList<SVNURL>();
         for (ModuleLocation l : getLocations(build)) {
             try {
-                if (getDescriptor().checkRepositoryPath(build.getProject(), l.getSVNURL()) == SVNNodeKind.NONE) {
-                    out.println("Location '" + l.remote + "' does not exist");
-
-                    ParametersAction params = build.getAction(ParametersAction.class);
-                    if (params != null) {
-                        // since this is used to disable projects, be conservative
-                        LOGGER.fine("Location could be expanded on build '" + build
-                            + "' parameters values:");
-                        return false;
-                    }
-                    return true;
-                }
+                urls.add(l.getSVNURL());
+                locations.add(l);
             } catch (SVNException e) {
-                // be conservative, since we are just trying to be helpful in detecting
-                // non existent locations. If we can't detect that, we'll do nothing
                 LOGGER.log(Level.FINE, "Location check failed", e);
             }
         }
+        // be conservative, since we are just trying to be helpful in detecting
+        // non existent locations. Locations that can't be checked are left out, and we do nothing about them
+        Map<SVNURL, SVNNodeKind> kinds = getDescriptor().getMetadataService().getNodeKinds(build.getProject(), urls);
+
+        for (int i = 0; i < locations.size(); i++) {
+            if (kinds.get(urls.get(i)) == SVNNodeKind.NONE) {
+                out.println("Location '" + locations.get(i).remote + "' does not exist");
+
+                ParametersAction params = build.getAction(ParametersAction.class);
+                if (params != null) {
+                    // since this is used to disable projects, be conservative
+                    LOGGER.fine("Location could be expanded on build '" + build
+                        + "' parameters values:");
+                    return false;
+                }
+                return true;
+            }
+        }
         return false;
     }
 
@@ -2348,6 +2787,7 @@ public class SubversionSCM extends SCM implements Serializable {
 
             // disable the connection pooling, which causes problems like
             // http://www.nabble.com/SSH-connection-problems-p12028339.html
+            // SSH connections are kept open with their sessions in RepositorySessionPool instead
             if (System.getProperty("svnkit.ssh2.persistent") == null) {
                 System.setProperty("svnkit.ssh2.persistent", "false");
             }
@@ -2401,6 +2841,12 @@ public class SubversionSCM extends SCM implements Serializable {
         @Exported
         public boolean ignoreExternalsOption;
 
+        /**
+         * Textual form of the {@link SparseProfile}. Null if the whole location is checked out.
+         */
+        @Exported
+        public final String sparseProfile;
+
         /**
          * Cache of the repository UUID.
          */
@@ -2417,13 +2863,19 @@ public class SubversionSCM extends SCM implements Serializable {
             this(remote, local, null, false);
         }
 
-        @DataBoundConstructor
         public ModuleLocation(String remote, String local, String depthOption, boolean ignoreExternalsOption) {
+            this(remote, local, depthOption, ignoreExternalsOption, null);
+        }
+
+        @DataBoundConstructor
+        public ModuleLocation(String remote, String local, String depthOption, boolean ignoreExternalsOption,
+                              String sparseProfile) {
             this.remote = Util.removeTrailingSlash(Util.fixNull(remote).trim());
             this.local = Util.fixEmptyAndTrim(local);
             this.depthOption = StringUtils.isEmpty(depthOption) ? SVNDepth.INFINITY.getName()
                 : depthOption;
             this.ignoreExternalsOption = ignoreExternalsOption;
+            this.sparseProfile = Util.fixEmptyAndTrim(sparseProfile);
         }
 
         /**
@@ -2468,10 +2920,10 @@ public class SubversionSCM extends SCM implements Serializable {
         public UUID getUUID(AbstractProject context) throws SVNException {
             if (repositoryUUID == null || repositoryRoot == null) {
                 synchronized (this) {
-                    SVNRepository r = openRepository(context);
-                    r.testConnection(); // make sure values are fetched
-                    repositoryUUID = UUID.fromString(r.getRepositoryUUID(false));
-                    repositoryRoot = r.getRepositoryRoot(false);
+                    DescriptorImpl d = Hudson.getInstance().getDescriptorByType(DescriptorImpl.class);
+                    RepositoryMetadataService.Info info = d.getMetadataService().getInfo(context, getSVNURL());
+                    repositoryUUID = info.uuid;
+                    repositoryRoot = info.root;
                 }
             }
             return repositoryUUID;
@@ -2529,6 +2981,24 @@ public class SubversionSCM extends SCM implements Serializable {
             return ignoreExternalsOption;
         }
 
+        /**
+         * Returns the textual form of the sparse check out profile.
+         *
+         * @return null if the whole location is checked out.
+         */
+        public String getSparseProfile() {
+            return sparseProfile;
+        }
+
+        /**
+         * Parses {@link #sparseProfile}.
+         *
+         * @return null if the whole location is checked out.
+         */
+        public SparseProfile getParsedSparseProfile() {
+            return SparseProfile.parse(sparseProfile);
+        }
+
         /**
          * Expand location value based on Build parametric execution.
          *
@@ -2538,7 +3008,7 @@ public class SubversionSCM extends SCM implements Serializable {
          */
         public ModuleLocation getExpandedLocation(AbstractBuild<?, ?> build) {
             return new ModuleLocation(getExpandedRemote(build), getLocalDir(), getDepthOption(),
-                isIgnoreExternalsOption());
+                isIgnoreExternalsOption(), getSparseProfile());
         }
 
         @Override
@@ -2587,6 +3057,7 @@ public class SubversionSCM extends SCM implements Serializable {
                 .append(repositoryRoot, that.repositoryRoot)
                 .append(repositoryUUID, that.repositoryUUID)
                 .append(ignoreExternalsOption, that.ignoreExternalsOption)
+                .append(sparseProfile, that.sparseProfile)
                 .isEquals();
         }
 
@@ -2597,6 +3068,7 @@ public class SubversionSCM extends SCM implements Serializable {
                 .append(getLocalDir())
                 .append(depthOption)
                 .append(ignoreExternalsOption)
+                .append(sparseProfile)
                 .append(repositoryUUID)
                 .append(repositoryRoot).hashCode();
         }
@@ -2604,6 +3076,45 @@ public class SubversionSCM extends SCM implements Serializable {
 
     private static final Logger LOGGER = Logger.getLogger(SubversionSCM.class.getName());
 
+    /**
+     * Outcome of the last clock check of a repository on this node.
+     */
+    private static final class ClockCheck {
+        final long timestamp;
+        final boolean outOfSync;
+
+        ClockCheck(long timestamp, boolean outOfSync) {
+            this.timestamp = timestamp;
+            this.outOfSync = outOfSync;
+        }
+    }
+
+    /**
+     * Last clock check of each repository root URL on this node, or of the module location URL
+     * while its repository root isn't known yet.
+     */
+    private static final ConcurrentMap<String, ClockCheck> CLOCK_CHECKS = new ConcurrentHashMap<String, ClockCheck>();
+
+    /**
+     * Finds the last clock check of the URL itself, or of the repository root it is under.
+     */
+    private static ClockCheck getClockCheck(String url) {
+        for (String prefix = url; ; prefix = prefix.substring(0, prefix.lastIndexOf('/'))) {
+            ClockCheck check = CLOCK_CHECKS.get(prefix);
+            if (check != null) {
+                return check;
+            }
+            if (prefix.indexOf('/', prefix.indexOf("://") + 3) < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Minutes between two clock checks of the same repository on a node.
+     */
+    public static int CLOCK_CHECK_INTERVAL = Integer.getInteger(SubversionSCM.class.getName() + ".clockCheckInterval", 60).intValue();
+
     /**
      * Network timeout in milliseconds.
      * The main point of this is to prevent infinite hang, so it should be a rather long value to avoid
@@ -2681,7 +3192,8 @@ public class SubversionSCM extends SCM implements Serializable {
             String remoteUrlPossiblyWithRevision) {
     		String remoteUrlWithoutRevision = remoteUrlPossiblyWithRevision;
     		       
-    		if (Hudson.getInstance() != null) {
+    		// credential lookups call this for every prefix of a URL, so skip the variables when there are none
+    		if (remoteUrlWithoutRevision.contains("${") && Hudson.getInstance() != null) {
     			for (NodeProperty n: Hudson.getInstance().getGlobalNodeProperties()) {
     				EnvironmentVariablesNodeProperty gnp = (EnvironmentVariablesNodeProperty)n;
     				for (Entry e : gnp.getEnvVars().entrySet()) {
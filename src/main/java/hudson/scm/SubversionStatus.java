@@ -25,10 +25,19 @@ package hudson.scm;
 
 import hudson.Extension;
 import hudson.model.AbstractModelObject;
+import hudson.model.AbstractProject;
+import hudson.model.Hudson;
 import hudson.model.RootAction;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.regex.Pattern;
 import java.util.UUID;
+import javax.servlet.http.HttpServletResponse;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerResponse;
 
 /**
  * Information screen for the use of Subversion in Hudson.
@@ -60,5 +69,63 @@ public class SubversionStatus extends AbstractModelObject implements RootAction
         return null;
     }
 
+    /**
+     * Finds the first build of a job that contained the given revision of the given URL.
+     * For example, <tt>/subversion/firstBuild?job=foo&amp;url=svn://host/trunk&amp;revision=123</tt>.
+     */
+    public void doFirstBuild(StaplerResponse rsp, @QueryParameter String job, @QueryParameter String url,
+                             @QueryParameter long revision) throws IOException {
+        AbstractProject<?, ?> p = getProject(job);
+        Integer n = p == null ? null : SubversionRevisionIndex.of(p).getFirstBuildContaining(url, revision);
+        if (n == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        JSONObject o = new JSONObject();
+        o.put("job", p.getFullName());
+        o.put("url", url);
+        o.put("revision", revision);
+        o.put("build", n);
+        writeJson(rsp, o);
+    }
+
+    /**
+     * Gets the revisions recorded by the given build, or by the closest build before it that has any.
+     * For example, <tt>/subversion/closestRevisions?job=foo&amp;build=42</tt>.
+     */
+    public void doClosestRevisions(StaplerResponse rsp, @QueryParameter String job, @QueryParameter int build)
+        throws IOException {
+        AbstractProject<?, ?> p = getProject(job);
+        Entry<Integer, Map<String, Long>> closest = p == null ? null : SubversionRevisionIndex.of(p).getClosest(build);
+        if (closest == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        JSONObject revisions = new JSONObject();
+        for (Entry<String, Long> e : closest.getValue().entrySet()) {
+            revisions.put(e.getKey(), e.getValue());
+        }
+        JSONObject o = new JSONObject();
+        o.put("job", p.getFullName());
+        o.put("build", closest.getKey());
+        o.put("revisions", revisions);
+        writeJson(rsp, o);
+    }
+
+    /**
+     * Looks up a job, honoring the read permission of the current user.
+     */
+    private AbstractProject<?, ?> getProject(String job) {
+        if (job == null) {
+            return null;
+        }
+        return Hudson.getInstance().getItemByFullName(job, AbstractProject.class);
+    }
+
+    private void writeJson(StaplerResponse rsp, JSONObject o) throws IOException {
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(o.toString());
+    }
+
     private static final Pattern UUID_PATTERN = Pattern.compile("\\p{XDigit}{8}-\\p{XDigit}{4}-\\p{XDigit}{4}-\\p{XDigit}{4}-\\p{XDigit}{12}");
 }
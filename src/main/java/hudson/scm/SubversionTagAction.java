@@ -47,7 +47,6 @@ import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNCopyClient;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.SVNCopySource;
-import org.tmatesoft.svn.core.wc.SVNWCUtil;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
@@ -257,7 +256,7 @@ public class SubversionTagAction extends AbstractScmTagAction implements
 		protected void perform(TaskListener listener) {
 			try {
 				final SVNClientManager cm = upc != null ? SVNClientManager
-						.newInstance(SVNWCUtil.createDefaultOptions(true),
+						.newInstance(SVNOptionsCache.INSTANCE.getOptions(),
 								upc.new AuthenticationManagerImpl(listener))
 						: SubversionSCM.createSvnClientManager(getBuild()
 								.getProject());
@@ -35,6 +35,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -87,9 +88,29 @@ public class SubversionWorkspaceSelector implements ISVNAdminAreaFactorySelector
     
     public static volatile int workspaceFormat = workingCopyFormat14; // We set the default working copy format to 1.4
 
+    /**
+     * Number of times a slave used the settings pushed by the master instead of asking for the format.
+     */
+    private static final AtomicLong roundTripsAvoided = new AtomicLong();
+
+    /**
+     * Gets how many calls to the master {@link #syncWorkspaceFormatFromMaster()} saved on this node
+     * since it started, thanks to {@link SubversionGlobalSettings}.
+     */
+    public static long getRoundTripsAvoided() {
+        return roundTripsAvoided.get();
+    }
+
 	@SuppressWarnings("boxing")
 	public static void syncWorkspaceFormatFromMaster() {
         Hudson h = Hudson.getInstance();
+        SubversionGlobalSettings pushed = SubversionGlobalSettings.getPushed();
+        if (h == null && pushed != null) {
+            // the master pushes every change, so there's no need to ask
+            workspaceFormat = pushed.workspaceFormat;
+            roundTripsAvoided.incrementAndGet();
+            return;
+        }
         if (h!=null)
             workspaceFormat = h.getDescriptorByType(SubversionSCM.DescriptorImpl.class).getWorkspaceFormat();
         else {
@@ -31,6 +31,8 @@ import hudson.util.Scrambler;
 import java.io.File;
 import java.io.IOException;
 import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.io.FileUtils;
@@ -121,20 +123,7 @@ public class SshPublicKeyCredential extends SubversionSCM.DescriptorImpl.Credent
     public SVNSSHAuthentication createSVNAuthentication(String kind) throws SVNException {
         if (kind.equals(ISVNAuthenticationManager.SSH)) {
             try {
-                Channel channel = Channel.current();
-                String privateKey;
-                if (channel != null) {
-                    // remote
-                    privateKey = channel.call(new Callable<String, IOException>() {
-                        public String call() throws IOException {
-                            return FileUtils.readFileToString(getKeyFile(),
-                                Messages.SshPublicKeyCredential_private_key_encoding());
-                        }
-                    });
-                } else {
-                    privateKey = FileUtils.readFileToString(getKeyFile(),
-                        Messages.SshPublicKeyCredential_private_key_encoding());
-                }
+                String privateKey = getPrivateKey();
                 return new SVNSSHAuthentication(userName, privateKey.toCharArray(),
                     Scrambler.descramble(passphrase), -1, false, null, false);
             } catch (IOException e) {
@@ -149,4 +138,64 @@ public class SshPublicKeyCredential extends SubversionSCM.DescriptorImpl.Credent
         }
         return null; // unknown
     }
+
+    /**
+     * Reads the private key, from {@link #KEYS} if it was read on this node before.
+     *
+     * <p>
+     * The key file of a credential never changes: a new key gets a new credential with a new {@link #id}.
+     */
+    private String getPrivateKey() throws IOException, InterruptedException {
+        synchronized (KEYS) {
+            String cached = KEYS.get(id);
+            if (cached != null) {
+                return Scrambler.descramble(cached);
+            }
+        }
+        String privateKey;
+        Channel channel = Channel.current();
+        if (channel != null) {
+            // remote
+            privateKey = channel.call(new Callable<String, IOException>() {
+                public String call() throws IOException {
+                    return FileUtils.readFileToString(getKeyFile(),
+                        Messages.SshPublicKeyCredential_private_key_encoding());
+                }
+            });
+        } else {
+            privateKey = FileUtils.readFileToString(getKeyFile(),
+                Messages.SshPublicKeyCredential_private_key_encoding());
+        }
+        synchronized (KEYS) {
+            KEYS.put(id, Scrambler.scramble(privateKey));
+        }
+        return privateKey;
+    }
+
+    /**
+     * Drops the private keys cached on this node. Called on every node when stored credentials change,
+     * so that a removed credential doesn't keep authenticating.
+     */
+    public static void forgetKeys() {
+        synchronized (KEYS) {
+            KEYS.clear();
+        }
+    }
+
+    /**
+     * Maximum number of private keys cached on a node.
+     */
+    public static int MAX_CACHED_KEYS =
+        Integer.getInteger(SshPublicKeyCredential.class.getName() + ".maxCachedKeys", 16);
+
+    /**
+     * Private keys read so far on this node, scrambled like {@link #passphrase}, by credential {@link #id},
+     * least recently used first. Guarded by itself.
+     */
+    private static final Map<String, String> KEYS = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_KEYS;
+        }
+    };
 }
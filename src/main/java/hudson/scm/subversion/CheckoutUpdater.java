@@ -37,6 +37,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.wc2.SvnWcGeneration;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.SVNUpdateClient;
 
@@ -72,11 +73,14 @@ public class CheckoutUpdater extends WorkspaceUpdater {
 
     protected static class UpdateTaskImpl extends UpdateTask {
         public List<External> perform() throws IOException, InterruptedException {
-            final SVNUpdateClient svnuc = manager.getUpdateClient();
-            final List<External> externals = new ArrayList<External>(); // store discovered externals to here
-
             cleanupBeforeCheckout();
 
+            if (isParallel()) {
+                return performParallel();
+            }
+
+            final List<External> externals = new ArrayList<External>(); // store discovered externals to here
+
             // buffer the output by a separate thread so that the update operation
             // won't be blocked by the remoting of the data
             PipedOutputStream pos = new PipedOutputStream();
@@ -90,53 +94,10 @@ public class CheckoutUpdater extends WorkspaceUpdater {
             try {
                 for (final ModuleLocation l : locations) {
                     location = l;
-                    SVNDepth svnDepth = getSvnDepth(l.getDepthOption());
-                    SVNRevision revision = getRevision(l);
-                    if (listener != null) {
-                        listener.getLogger().println("Checking out " + l.remote + " revision: " +
-                                (revision != null ? revision.toString() : "null") + " depth:" + svnDepth +
-                                " ignoreExternals: " + l.isIgnoreExternalsOption());
-                    }
-                    File local = new File(ws, l.getLocalDir());
-                    svnuc.setIgnoreExternals(l.isIgnoreExternalsOption());
-                    
-                    SubversionUpdateEventHandler handler = new SubversionUpdateEventHandler(new PrintStream(pos), externals, local, l.getLocalDir());
-                    svnuc.setEventHandler(handler);
-                    svnuc.setExternalsHandler(handler);
-                    
-                    // If we can't find a valid working generation, fall back to 1.6 generation.
-                    if ((SubversionWorkspaceSelector.workspaceFormat == SubversionWorkspaceSelector.workingCopyFormat17) ||
-                         (SubversionWorkspaceSelector.workspaceFormat == SubversionWorkspaceSelector.workingCopyFormat18))
-                    	svnuc.getOperationsFactory().setPrimaryWcGeneration(SvnWcGeneration.V17);
-                    else 
-                    	svnuc.getOperationsFactory().setPrimaryWcGeneration(SvnWcGeneration.V16);
-                    
-                    // Finally perform a checkout. 
-                    // Fix: 439300 - Use explicit SvnCheckout API so we could specify the workspace format
-//                    svnuc.doCheckout(l.getSVNURL(), local.getCanonicalFile(), SVNRevision.HEAD, revision,
-//                            svnDepth, true);
-                    
-                    SvnCheckout checkout = svnuc.getOperationsFactory().createCheckout();
-                    checkout.setSource(SvnTarget.fromURL(l.getSVNURL(), SVNRevision.HEAD));
-                    checkout.setSingleTarget(SvnTarget.fromFile(local.getCanonicalFile()));
-                    checkout.setRevision(revision);
-                    checkout.setDepth(svnDepth);
-                    checkout.setAllowUnversionedObstructions(true);
-                    checkout.setUpdateLocksOnDemand(svnuc.isUpdateLocksOnDemand());
-                    checkout.setIgnoreExternals(svnuc.isIgnoreExternals());
-                    checkout.setExternalsHandler(SvnCodec.externalsHandler(svnuc.getExternalsHandler()));
-                    checkout.setTargetWorkingCopyFormat(SubversionWorkspaceSelector.workspaceFormat);
-                    checkout.run();
+                    checkout(l, manager, new PrintStream(pos), externals);
                 }
             } catch (SVNException e) {
-                //TODO find better solution than this workaround, svnkit uses the same exception and
-                // the same error code in case of aborted builds and builds with invalid credentials
-                if (e.getMessage() != null && e.getMessage().contains(SVN_CANCEL_EXCEPTION_MESSAGE)) {
-                    listener.error("Svn command was aborted");
-                    throw (InterruptedException) new InterruptedException().initCause(e);
-                }
-                e.printStackTrace(listener.error("Failed to check out " + location.remote));
-                return null;
+                return handleFailure(location, e, "check out");
             } finally {
                 try {
                     pos.close();
@@ -154,6 +115,106 @@ public class CheckoutUpdater extends WorkspaceUpdater {
             return externals;
         }
 
+        /**
+         * Checks out {@link #locations} concurrently, each with its own {@link SVNClientManager}.
+         */
+        private List<External> performParallel() throws IOException, InterruptedException {
+            List<ParallelLocationRunner.Outcome<List<External>>> outcomes = new ParallelLocationRunner<List<External>>(this) {
+                @Override
+                protected List<External> perform(ModuleLocation l, SVNClientManager manager, PrintStream out)
+                    throws SVNException, IOException, InterruptedException {
+                    List<External> externals = new ArrayList<External>();
+                    checkout(l, manager, out, externals);
+                    return externals;
+                }
+            }.run(locations, parallelLocations);
+
+            // report the first failure in the order of locations, then merge the externals in the same order
+            for (ParallelLocationRunner.Outcome<List<External>> o : outcomes) {
+                if (o != null && o.error != null) {
+                    return handleFailure(o.location, o.error, "check out");
+                }
+            }
+            List<External> externals = new ArrayList<External>();
+            for (ParallelLocationRunner.Outcome<List<External>> o : outcomes) {
+                externals.addAll(o.value);
+            }
+            return externals;
+        }
+
+        /**
+         * Checks out a single location.
+         *
+         * @param out
+         *      Receives the progress of the check out.
+         * @param externals
+         *      Discovered externals are added here.
+         */
+        protected void checkout(ModuleLocation l, SVNClientManager manager, PrintStream out, List<External> externals)
+            throws SVNException, IOException, InterruptedException {
+            final SVNUpdateClient svnuc = manager.getUpdateClient();
+            SparseProfile profile = l.getParsedSparseProfile();
+            // a sparse check out starts from the bare directory, and brings in the subtrees afterward
+            SVNDepth svnDepth = profile != null ? SVNDepth.EMPTY : getSvnDepth(l.getDepthOption());
+            SVNRevision revision = getRevision(l);
+            if (listener != null) {
+                out.println("Checking out " + l.remote + " revision: " +
+                        (revision != null ? revision.toString() : "null") + " depth:" + svnDepth +
+                        " ignoreExternals: " + l.isIgnoreExternalsOption());
+                if (profile != null) {
+                    out.print("Sparse check out profile:\n" + profile);
+                }
+            }
+            File local = new File(ws, l.getLocalDir());
+            svnuc.setIgnoreExternals(l.isIgnoreExternalsOption());
+
+            // If we can't find a valid working generation, fall back to 1.6 generation.
+            if ((SubversionWorkspaceSelector.workspaceFormat == SubversionWorkspaceSelector.workingCopyFormat17) ||
+                 (SubversionWorkspaceSelector.workspaceFormat == SubversionWorkspaceSelector.workingCopyFormat18))
+            	svnuc.getOperationsFactory().setPrimaryWcGeneration(SvnWcGeneration.V17);
+            else 
+            	svnuc.getOperationsFactory().setPrimaryWcGeneration(SvnWcGeneration.V16);
+
+            boolean seeded = referenceCacheSize > 0 && profile == null
+                && ReferenceWorkingCopyCache.of(nodeRootDir).seed(l, svnuc, revision, svnDepth,
+                    local.getCanonicalFile(), out, referenceCacheSize * 1024 * 1024);
+
+            SubversionUpdateEventHandler handler = createEventHandler(out, externals, local, l.getLocalDir());
+            svnuc.setEventHandler(handler);
+            svnuc.setExternalsHandler(handler);
+
+            try {
+                if (seeded) {
+                    // the copy is already at the revision. this is for the externals and the console
+                    svnuc.doUpdate(local.getCanonicalFile(), revision, svnDepth, true, false);
+                    return;
+                }
+
+                // Finally perform a checkout. 
+                // Fix: 439300 - Use explicit SvnCheckout API so we could specify the workspace format
+//            svnuc.doCheckout(l.getSVNURL(), local.getCanonicalFile(), SVNRevision.HEAD, revision,
+//                    svnDepth, true);
+
+                SvnCheckout checkout = svnuc.getOperationsFactory().createCheckout();
+                checkout.setSource(SvnTarget.fromURL(l.getSVNURL(), SVNRevision.HEAD));
+                checkout.setSingleTarget(SvnTarget.fromFile(local.getCanonicalFile()));
+                checkout.setRevision(revision);
+                checkout.setDepth(svnDepth);
+                checkout.setAllowUnversionedObstructions(true);
+                checkout.setUpdateLocksOnDemand(svnuc.isUpdateLocksOnDemand());
+                checkout.setIgnoreExternals(svnuc.isIgnoreExternals());
+                checkout.setExternalsHandler(SvnCodec.externalsHandler(svnuc.getExternalsHandler()));
+                checkout.setTargetWorkingCopyFormat(SubversionWorkspaceSelector.workspaceFormat);
+                Long checkedOut = checkout.run();
+
+                if (profile != null) {
+                    profile.apply(svnuc, local.getCanonicalFile(), checkedOut.longValue());
+                }
+            } finally {
+                handler.flush();
+            }
+        }
+
         /**
          * Cleans workspace.
          *
@@ -163,7 +224,11 @@ public class CheckoutUpdater extends WorkspaceUpdater {
             if (listener != null && listener.getLogger() != null) {
                 listener.getLogger().println("Cleaning workspace " + ws.getCanonicalPath());
             }
-            Util.deleteContentsRecursive(ws);
+            if (fastWipe) {
+                WorkspaceTrash.wipe(ws, ws);
+            } else {
+                Util.deleteContentsRecursive(ws);
+            }
         }
     }
     
@@ -84,7 +84,11 @@ public class CheckoutWithLocationFoldersCleanupUpdater extends WorkspaceUpdater
                 if (listener != null && listener.getLogger() != null) {
                     listener.getLogger().println("Cleaning checkout folder " + local.getCanonicalPath());
                 }
-                Util.deleteContentsRecursive(local);
+                if (fastWipe) {
+                    WorkspaceTrash.wipe(ws, local);
+                } else {
+                    Util.deleteContentsRecursive(local);
+                }
             }
         }
     }
@@ -0,0 +1,102 @@
+package hudson.scm.subversion;
+
+import com.thoughtworks.xstream.XStream;
+import hudson.XmlFile;
+import hudson.scm.SubversionSCM.External;
+import hudson.util.XStream2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records what {@link ExportUpdater} exported into a workspace, since an export leaves no <tt>.svn</tt>
+ * metadata behind to ask "svn info".
+ *
+ * <p>
+ * Stored as {@link #FILE_NAME} in the workspace root.
+ */
+public final class ExportManifest {
+    public static final String FILE_NAME = ".svnexport.xml";
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * A module location or an external that was exported.
+     */
+    public static final class Entry {
+        /**
+         * Where it was exported to. For module locations, the local directory relative to the workspace.
+         * For externals, the same path as {@link hudson.scm.SubversionSCM.External#path}.
+         */
+        public final String path;
+
+        /**
+         * Decoded repository URL.
+         */
+        public final String url;
+
+        /**
+         * Revision that was exported.
+         */
+        public final long revision;
+
+        public Entry(String path, String url, long revision) {
+            this.path = path;
+            this.url = url;
+            this.revision = revision;
+        }
+    }
+
+    public synchronized void add(String path, String url, long revision) {
+        entries.add(new Entry(normalize(path), url, revision));
+    }
+
+    /**
+     * Finds the entry exported to the given path.
+     *
+     * @return null if nothing was exported there.
+     */
+    public synchronized Entry get(String path) {
+        String p = normalize(path);
+        for (Entry e : entries) {
+            if (e.path.equals(p)) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void save(File ws) throws IOException {
+        new XmlFile(XSTREAM, new File(ws, FILE_NAME)).write(this);
+    }
+
+    /**
+     * Loads the manifest of the given workspace.
+     *
+     * @return null if the workspace wasn't exported.
+     */
+    public static ExportManifest load(File ws) throws IOException {
+        XmlFile f = new XmlFile(XSTREAM, new File(ws, FILE_NAME));
+        if (!f.exists()) {
+            return null;
+        }
+        return (ExportManifest) f.read();
+    }
+
+    private static String normalize(String path) {
+        String p = External.normalize(path);
+        if (p.length() == 0) {
+            p = ".";
+        }
+        return p;
+    }
+
+    private static final XStream XSTREAM = new XStream2();
+
+    static {
+        XSTREAM.alias("exportManifest", ExportManifest.class);
+        XSTREAM.alias("entry", Entry.class);
+    }
+}
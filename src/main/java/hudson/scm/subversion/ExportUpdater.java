@@ -0,0 +1,193 @@
+package hudson.scm.subversion;
+
+import hudson.Extension;
+import hudson.scm.SubversionSCM.External;
+import hudson.scm.SubversionSCM.ModuleLocation;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNExternal;
+import org.tmatesoft.svn.core.wc.ISVNPropertyHandler;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNPropertyData;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNUpdateClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link WorkspaceUpdater} that cleans workspace and then performs "svn export".
+ *
+ * <p>
+ * The workspace gets no <tt>.svn</tt> metadata, so it takes about half the disk space of a check out,
+ * but it can never be updated. What was exported is recorded in the {@link ExportManifest}.
+ */
+public class ExportUpdater extends WorkspaceUpdater {
+    @DataBoundConstructor
+    public ExportUpdater() {
+    }
+
+    @Override
+    public UpdateTask createTask() {
+        return new TaskImpl();
+    }
+
+    @Extension
+    public static class DescriptorImpl extends WorkspaceUpdaterDescriptor {
+        @Override
+        public String getDisplayName() {
+            return Messages.ExportUpdater_DisplayName();
+        }
+    }
+
+    protected static class TaskImpl extends CheckoutUpdater.UpdateTaskImpl {
+        private transient ExportManifest manifest;
+
+        @Override
+        public List<External> perform() throws IOException, InterruptedException {
+            manifest = new ExportManifest();
+            List<External> externals = super.perform();
+            if (externals != null) {
+                manifest.save(ws);
+            }
+            return externals;
+        }
+
+        @Override
+        protected void checkout(ModuleLocation l, SVNClientManager manager, PrintStream out, List<External> externals)
+            throws SVNException, IOException {
+            SVNDepth svnDepth = getSvnDepth(l.getDepthOption());
+            SVNRevision revision = getRevision(l);
+            out.println("Exporting " + l.remote + " revision: " +
+                (revision != null ? revision.toString() : "null") + " depth:" + svnDepth +
+                " ignoreExternals: " + l.isIgnoreExternalsOption());
+
+            File local = new File(ws, l.getLocalDir()).getCanonicalFile();
+            SVNURL url = l.getSVNURL();
+            long exported = export(manager, url, SVNRevision.HEAD, revision, svnDepth, l.isIgnoreExternalsOption(),
+                local, l.getLocalDir(), out, externals);
+            manifest.add(l.getLocalDir(), url.toDecodedString(), exported);
+        }
+
+        /**
+         * Exports a URL, then its externals.
+         *
+         * @param pegRevision
+         *      Revision in which the URL identifies what to export.
+         * @return the revision that was exported.
+         */
+        private long export(SVNClientManager manager, SVNURL url, SVNRevision pegRevision, SVNRevision revision, SVNDepth depth,
+                            boolean ignoreExternals, File dst, String modulePath, PrintStream out,
+                            List<External> externals) throws SVNException, IOException {
+            SVNUpdateClient svnuc = manager.getUpdateClient();
+            SubversionUpdateEventHandler handler = createEventHandler(out, new ArrayList<External>(), dst, modulePath);
+            svnuc.setEventHandler(handler);
+            // externals are exported below, so that we know where they went
+            svnuc.setIgnoreExternals(true);
+            long exported;
+            try {
+                exported = svnuc.doExport(url, dst, pegRevision, revision, null, true, depth);
+            } finally {
+                handler.flush();
+            }
+            if (ignoreExternals) {
+                return exported;
+            }
+
+            for (Definition d : findExternals(manager, url, pegRevision, exported, depth)) {
+                String ownerPath = d.owner.getPath().substring(url.getPath().length());
+                File extDst = new File(new File(dst, ownerPath), d.external.getPath()).getCanonicalFile();
+                SVNRevision extRevision = d.external.getRevision().isValid() ? d.external.getRevision() : SVNRevision.HEAD;
+                if (extRevision.getNumber() < 0 && pinnedRevisions != null) {
+                    Long pinned = getPinnedRevision(pinnedRevisions, d.external.getResolvedURL());
+                    if (pinned != null) {
+                        extRevision = SVNRevision.create(pinned.longValue());
+                    }
+                }
+                out.println(Messages.SubversionUpdateEventHandler_FetchExternal(
+                    d.external.getResolvedURL(), Long.valueOf(extRevision.getNumber()), extDst));
+                // "-r N url@P" exports what url was at P, as of N
+                SVNRevision extPegRevision = d.external.getPegRevision().isValid() ? d.external.getPegRevision() : SVNRevision.HEAD;
+                long extExported = export(manager, d.external.getResolvedURL(), extPegRevision, extRevision,
+                    SVNDepth.INFINITY, false, extDst, modulePath, out, externals);
+
+                // same path as SubversionUpdateEventHandler records
+                External ext = new External(getWorkspacePath(extDst), d.external.getResolvedURL(),
+                    d.external.getRevision().getNumber());
+                externals.add(ext);
+                manifest.add(ext.path, ext.url, extExported);
+            }
+            return exported;
+        }
+
+        /**
+         * Gets the path of an exported directory relative to the workspace.
+         */
+        private String getWorkspacePath(File dir) throws IOException {
+            String base = ws.getCanonicalPath() + File.separator;
+            String path = dir.getPath();
+            return External.normalize(path.startsWith(base) ? path.substring(base.length()) : path);
+        }
+
+        /**
+         * Reads the <tt>svn:externals</tt> definitions under the given URL from the repository.
+         */
+        private List<Definition> findExternals(SVNClientManager manager, SVNURL url, SVNRevision pegRevision,
+                                               long revision, SVNDepth depth) throws SVNException {
+            // owned by the client manager, which hands the same session to the next export
+            final SVNURL root = manager.createRepository(url, true).getRepositoryRoot(true);
+
+            final List<Definition> definitions = new ArrayList<Definition>();
+            SVNRevision r = SVNRevision.create(revision);
+            manager.getWCClient().doGetProperty(url, SVNProperty.EXTERNALS, pegRevision, r, depth, new ISVNPropertyHandler() {
+                public void handleProperty(File path, SVNPropertyData property) {
+                }
+
+                public void handleProperty(SVNURL owner, SVNPropertyData property) throws SVNException {
+                    if (property.getValue() == null) {
+                        return;
+                    }
+                    for (SVNExternal e : SVNExternal.parseExternals(owner, property.getValue().getString())) {
+                        e.resolveURL(root, owner);
+                        definitions.add(new Definition(owner, e));
+                    }
+                }
+
+                public void handleProperty(long revision, SVNPropertyData property) {
+                }
+            });
+            return definitions;
+        }
+
+        private static final class Definition {
+            final SVNURL owner;
+            final SVNExternal external;
+
+            Definition(SVNURL owner, SVNExternal external) {
+                this.owner = owner;
+                this.external = external;
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+
+        if (!(o instanceof ExportUpdater))
+            return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -0,0 +1,277 @@
+package hudson.scm.subversion;
+
+import hudson.Extension;
+import hudson.model.TaskListener;
+import hudson.scm.SubversionSCM.External;
+import hudson.scm.SubversionSCM.ModuleLocation;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNInfo;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNUpdateClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link WorkspaceUpdater} that only updates the paths that changed since the working copy was last updated.
+ *
+ * <p>
+ * The changed paths come from "svn log" between the revision of the working copy and the revision to build.
+ * Each of them is updated on its own, then the root of the working copy is brought to the same revision.
+ * This spares the server the report of the whole working copy that a regular "svn update" sends, which is most
+ * of the cost of updating a big tree with a few changes.
+ *
+ * <p>
+ * The root is updated at depth "empty", so the paths that didn't change keep the revision they had, and
+ * the working copy ends up at mixed revisions. The contents are the same as after a regular "svn update",
+ * but "svn status -v" shows the older revisions, and "svn info" on an unchanged path reports its last update.
+ *
+ * <p>
+ * Whenever the changes can't be pinned down, because there are too many of them, or the location itself or
+ * one of its parents was added, deleted or replaced, or the location is checked out at a limited depth or
+ * sparsely, or the working copy has externals, a regular "svn update" is done instead.
+ */
+public class IncrementalUpdateUpdater extends WorkspaceUpdater {
+    /**
+     * Above this many changed paths, a regular update is done.
+     */
+    private final int maxChangedPaths;
+
+    @DataBoundConstructor
+    public IncrementalUpdateUpdater(int maxChangedPaths) {
+        this.maxChangedPaths = maxChangedPaths > 0 ? maxChangedPaths : DEFAULT_MAX_CHANGED_PATHS;
+    }
+
+    public IncrementalUpdateUpdater() {
+        this(DEFAULT_MAX_CHANGED_PATHS);
+    }
+
+    public int getMaxChangedPaths() {
+        return maxChangedPaths;
+    }
+
+    @Override
+    public UpdateTask createTask() {
+        return new TaskImpl(maxChangedPaths);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends WorkspaceUpdaterDescriptor {
+        @Override
+        public String getDisplayName() {
+            return Messages.IncrementalUpdateUpdater_DisplayName();
+        }
+    }
+
+    // mostly "svn update", just narrower
+    public static class TaskImpl extends UpdateUpdater.TaskImpl {
+        private final int maxChangedPaths;
+
+        public TaskImpl(int maxChangedPaths) {
+            this.maxChangedPaths = maxChangedPaths;
+        }
+
+        @Override
+        protected void update(ModuleLocation l, SVNClientManager manager, TaskListener listener, List<External> externals)
+            throws SVNException, IOException {
+            File local = new File(ws, l.getLocalDir()).getCanonicalFile();
+            Changes changes = findChanges(l, local, manager, listener);
+            if (changes == null) {
+                super.update(l, manager, listener, externals);
+                return;
+            }
+
+            final SVNUpdateClient svnuc = manager.getUpdateClient();
+            SubversionUpdateEventHandler handler = createEventHandler(listener.getLogger(), externals, local, l.getLocalDir());
+            svnuc.setEventHandler(handler);
+            svnuc.setExternalsHandler(handler);
+            svnuc.setIgnoreExternals(l.isIgnoreExternalsOption());
+            preUpdate(l, local, manager, listener);
+
+            listener.getLogger().println("Updating " + changes.targets.size() + " changed paths of " + l.remote
+                + " from revision " + changes.base + " to " + changes.target);
+            SVNRevision target = SVNRevision.create(changes.target);
+            List<File> files = new ArrayList<File>(), trees = new ArrayList<File>();
+            for (Map.Entry<String, SVNDepth> e : changes.targets.entrySet()) {
+                (e.getValue() == SVNDepth.INFINITY ? trees : files).add(new File(local, e.getKey()));
+            }
+            try {
+                if (!files.isEmpty()) {
+                    svnuc.doUpdate(files.toArray(new File[files.size()]), target, SVNDepth.EMPTY, true, false, false);
+                }
+                if (!trees.isEmpty()) {
+                    svnuc.doUpdate(trees.toArray(new File[trees.size()]), target, SVNDepth.INFINITY, true, false, false);
+                }
+                // brings the working copy root to the revision, without touching its children
+                svnuc.doUpdate(new File[]{local}, target, SVNDepth.EMPTY, true, false, false);
+            } finally {
+                handler.flush();
+            }
+        }
+
+        /**
+         * Figures out what to update.
+         *
+         * @return null if a regular update has to be done.
+         */
+        private Changes findChanges(ModuleLocation l, File local, SVNClientManager manager, TaskListener listener)
+            throws SVNException {
+            if (!SVNDepth.INFINITY.equals(getSvnDepth(l.getDepthOption())) || l.getParsedSparseProfile() != null) {
+                return null;
+            }
+            if (!l.isIgnoreExternalsOption() && !Boolean.FALSE.equals(WorkingCopyScanner.hasExternals(local))) {
+                // the externals would have to be updated, and reported, as well
+                return null;
+            }
+
+            SVNInfo info = manager.getWCClient().doInfo(local, SVNRevision.WORKING);
+            if (!info.getURL().equals(l.getSVNURL())) {
+                return null;
+            }
+            long base = info.getRevision().getNumber();
+            long target = resolve(l, manager);
+            if (target < base) {
+                return null;
+            }
+
+            final Changes changes = new Changes(base, target);
+            if (target == base) {
+                return changes;
+            }
+
+            final String root = SparseProfile.getRepositoryPath(l.getSVNURL(), info.getRepositoryRootURL());
+            final List<SVNLogEntryPath> paths = new ArrayList<SVNLogEntryPath>();
+            final int[] entries = new int[1];
+            final boolean[] moved = new boolean[1];
+            manager.getLogClient().doLog(l.getSVNURL(), null, SVNRevision.create(target), SVNRevision.create(base + 1),
+                SVNRevision.create(target), false, true, maxChangedPaths + 1, new ISVNLogEntryHandler() {
+                    public void handleLogEntry(SVNLogEntry logEntry) {
+                        entries[0]++;
+                        for (Object p : logEntry.getChangedPaths().values()) {
+                            SVNLogEntryPath path = (SVNLogEntryPath) p;
+                            if (path.getPath().startsWith(root + '/')) {
+                                paths.add(path);
+                            } else if (isSameOrAncestor(path.getPath(), root)
+                                && path.getType() != SVNLogEntryPath.TYPE_MODIFIED) {
+                                // property changes of the root are picked up by its own update below
+                                moved[0] = true;
+                            }
+                        }
+                    }
+                });
+            if (moved[0]) {
+                listener.getLogger().println(l.remote + " was added, deleted or replaced between revision " + base
+                    + " and " + target + ". Doing a regular update");
+                return null;
+            }
+            if (entries[0] > maxChangedPaths || paths.size() > maxChangedPaths) {
+                listener.getLogger().println("Too many changes between revision " + base + " and " + target
+                    + " of " + l.remote + " for an incremental update");
+                return null;
+            }
+
+            for (SVNLogEntryPath path : paths) {
+                String relative = path.getPath().substring(root.length() + 1);
+                // modifications only touch the path itself. additions, deletions and replacements take the subtree
+                SVNDepth depth = path.getType() == SVNLogEntryPath.TYPE_MODIFIED ? SVNDepth.EMPTY : SVNDepth.INFINITY;
+                if (depth == SVNDepth.INFINITY || !changes.targets.containsKey(relative)) {
+                    changes.targets.put(relative, depth);
+                }
+            }
+            return changes.collapse(local) ? changes : null;
+        }
+
+        private static boolean isSameOrAncestor(String path, String root) {
+            return path.equals(root) || path.equals("/") || root.startsWith(path + '/');
+        }
+
+        /**
+         * Resolves the revision to update to into a number.
+         */
+        private long resolve(ModuleLocation l, SVNClientManager manager) throws SVNException {
+            SVNRevision revision = getRevision(l);
+            if (revision != null && revision.getNumber() >= 0) {
+                return revision.getNumber();
+            }
+            // owned by the client manager, which hands the same session to the update
+            SVNRepository repository = manager.createRepository(l.getSVNURL(), true);
+            if (revision != null && revision.getDate() != null) {
+                return repository.getDatedRevision(revision.getDate());
+            }
+            return repository.getLatestRevision();
+        }
+    }
+
+    /**
+     * Paths to update, relative to the working copy root.
+     */
+    private static final class Changes {
+        final long base;
+        final long target;
+        /**
+         * Depth to update each path with.
+         */
+        final TreeMap<String, SVNDepth> targets = new TreeMap<String, SVNDepth>();
+
+        Changes(long base, long target) {
+            this.base = base;
+            this.target = target;
+        }
+
+        /**
+         * Drops the paths that come with a subtree that is updated anyway.
+         *
+         * @return false if some path can't be updated on its own.
+         */
+        boolean collapse(File local) {
+            for (String path : new ArrayList<String>(targets.keySet())) {
+                if (isInTree(path)) {
+                    targets.remove(path);
+                    continue;
+                }
+                if (!new File(local, path).getParentFile().isDirectory()) {
+                    // neither in the working copy nor added by the changes
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isInTree(String path) {
+            for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+                if (targets.get(path.substring(0, i)) == SVNDepth.INFINITY) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+
+        if (!(o instanceof IncrementalUpdateUpdater))
+            return false;
+        return maxChangedPaths == ((IncrementalUpdateUpdater) o).maxChangedPaths;
+    }
+
+    @Override
+    public int hashCode() {
+        return maxChangedPaths;
+    }
+
+    public static final int DEFAULT_MAX_CHANGED_PATHS = 1000;
+}
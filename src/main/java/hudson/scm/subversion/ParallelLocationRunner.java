@@ -0,0 +1,167 @@
+package hudson.scm.subversion;
+
+import hudson.scm.SubversionSCM;
+import hudson.scm.SubversionSCM.ModuleLocation;
+import hudson.scm.subversion.WorkspaceUpdater.UpdateTask;
+import hudson.scm.util.NamedThreadFactory;
+import hudson.util.IOException2;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performs the same piece of work for each {@link ModuleLocation} of an {@link UpdateTask}
+ * concurrently, on a bounded number of threads.
+ *
+ * <p>
+ * SVNKit clients aren't thread-safe, so each location gets its own {@link SVNClientManager}.
+ * Each location also writes into its own buffer, which is copied to the build console in one piece
+ * once the location is done, so that the output of different modules doesn't interleave.
+ *
+ * <p>
+ * The first location that fails stops the rest, just like the first failure stops
+ * the sequential loop in the updaters.
+ */
+abstract class ParallelLocationRunner<T> {
+    protected final UpdateTask task;
+
+    ParallelLocationRunner(UpdateTask task) {
+        this.task = task;
+    }
+
+    /**
+     * Performs the work for a single location.
+     *
+     * @param manager
+     *      Dedicated to this invocation, and disposed when it returns.
+     * @param out
+     *      Output for this location.
+     */
+    protected abstract T perform(ModuleLocation location, SVNClientManager manager, PrintStream out)
+        throws SVNException, IOException, InterruptedException;
+
+    /**
+     * Runs {@link #perform(ModuleLocation, SVNClientManager, PrintStream)} for all the given locations.
+     *
+     * @return
+     *      Outcomes in the order of the given locations. An entry is null if the location
+     *      was abandoned because another location failed first.
+     */
+    final List<Outcome<T>> run(ModuleLocation[] locations, int threads) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, locations.length)),
+            new NamedThreadFactory("svn location worker"));
+        CompletionService<Outcome<T>> completion = new ExecutorCompletionService<Outcome<T>>(executor);
+        List<Outcome<T>> outcomes = new ArrayList<Outcome<T>>(Arrays.asList(newArray(locations.length)));
+        try {
+            for (int i = 0; i < locations.length; i++) {
+                completion.submit(new Worker(i, locations[i]));
+            }
+            for (int i = 0; i < locations.length; i++) {
+                Outcome<T> o = completion.take().get();
+                outcomes.set(o.index, o);
+                if (o.error != null) {
+                    // the rest is going to be thrown away anyway
+                    break;
+                }
+            }
+            return outcomes;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException2("Failed to process a location", cause);
+        } finally {
+            // interrupting the workers makes SVNKit abort through the event handlers
+            executor.shutdownNow();
+            executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.SECONDS);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Outcome<T>[] newArray(int size) {
+        return new Outcome[size];
+    }
+
+    private final class Worker implements Callable<Outcome<T>> {
+        private final int index;
+        private final ModuleLocation location;
+
+        Worker(int index, ModuleLocation location) {
+            this.index = index;
+            this.location = location;
+        }
+
+        public Outcome<T> call() throws Exception {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(buf, true);
+            SVNClientManager manager = SubversionSCM.createSvnClientManager(task.authProvider);
+            try {
+                return new Outcome<T>(index, location, perform(location, manager, out), null);
+            } catch (SVNException e) {
+                return new Outcome<T>(index, location, null, e);
+            } finally {
+                manager.dispose();
+                out.flush();
+                if (task.listener != null) {
+                    PrintStream console = task.listener.getLogger();
+                    synchronized (console) {
+                        buf.writeTo(console);
+                        console.flush();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Result of {@link ParallelLocationRunner#perform(ModuleLocation, SVNClientManager, PrintStream)}
+     * for a single location.
+     */
+    static final class Outcome<T> {
+        final int index;
+        final ModuleLocation location;
+        /**
+         * Return value of the work. Null if it failed.
+         */
+        final T value;
+        /**
+         * Failure of the work. Null if it succeeded.
+         */
+        final SVNException error;
+
+        Outcome(int index, ModuleLocation location, T value, SVNException error) {
+            this.index = index;
+            this.location = location;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    /**
+     * How long to wait for abandoned locations to notice that they've been cancelled, in seconds.
+     */
+    private static final long TERMINATION_TIMEOUT = 60;
+}
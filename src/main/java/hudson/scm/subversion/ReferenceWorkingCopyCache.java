@@ -0,0 +1,321 @@
+package hudson.scm.subversion;
+
+import hudson.Util;
+import hudson.model.Hudson;
+import hudson.scm.SubversionSCM.ModuleLocation;
+import hudson.scm.SubversionWorkspaceSelector;
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.wc.ISVNEventHandler;
+import org.tmatesoft.svn.core.wc.ISVNExternalsHandler;
+import org.tmatesoft.svn.core.wc.SVNEvent;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNUpdateClient;
+import org.tmatesoft.svn.core.wc2.SvnCheckout;
+import org.tmatesoft.svn.core.wc2.SvnTarget;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Node-local cache of pristine working copies, used to seed fresh check outs.
+ *
+ * <p>
+ * Each entry is a working copy of one repository URL (at a given depth, externals setting and workspace format),
+ * kept in its own directory under the root directory of the node, or under {@link #DIR} if that is set. To seed a
+ * check out, the entry is brought up to the requested revision and copied into the workspace, so only the changes
+ * since the entry was last used come from the server.
+ *
+ * <p>
+ * An entry is locked while it is updated or copied, both within this JVM and, through a file lock, against
+ * other JVMs on the same machine. Once a check out is seeded, the least recently used entries are deleted
+ * until the cache fits in its disk budget.
+ */
+final class ReferenceWorkingCopyCache {
+    private static final String WC = "wc";
+    private static final String LOCK = "lock";
+    private static final String SIZE = "size";
+    private static final String USED = "used";
+
+    private final File root;
+
+    private final ConcurrentMap<String, ReentrantLock> locks = new ConcurrentHashMap<String, ReentrantLock>();
+
+    ReferenceWorkingCopyCache(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Fills the given directory with a working copy of the location copied from the cache.
+     *
+     * <p>
+     * This replaces the event and externals handlers of the update client, since what happens
+     * to the cache entry is not part of the build.
+     *
+     * @param local
+     *      Empty directory to fill.
+     * @param budget
+     *      Disk budget of the whole cache, in bytes.
+     * @return
+     *      false if the cache couldn't be used, in which case {@code local} is emptied again.
+     */
+    boolean seed(ModuleLocation l, SVNUpdateClient svnuc, SVNRevision revision, SVNDepth depth, File local,
+                 PrintStream out, long budget) throws IOException, InterruptedException {
+        String key = Util.getDigestOf(l.getURL() + '\n' + depth + '\n' + l.isIgnoreExternalsOption() + '\n'
+            + SubversionWorkspaceSelector.workspaceFormat);
+        File entry = new File(root, key);
+        try {
+            ReentrantLock lock = lockOf(key);
+            lock.lockInterruptibly();
+            try {
+                if (!entry.isDirectory() && !entry.mkdirs()) {
+                    throw new IOException("Failed to create " + entry);
+                }
+                RandomAccessFile lockFile = new RandomAccessFile(new File(entry, LOCK), "rw");
+                try {
+                    FileLock fileLock = lockFile.getChannel().lock();
+                    try {
+                        refresh(l, svnuc, revision, depth, entry, out);
+                        out.println("Copying reference working copy of " + l.getURL() + " to " + local);
+                        FileUtils.copyDirectory(new File(entry, WC), local, true);
+                        touch(new File(entry, USED));
+                    } finally {
+                        fileLock.release();
+                    }
+                } finally {
+                    lockFile.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (SVNCancelException e) {
+            Util.deleteContentsRecursive(local);
+            throw (InterruptedException) new InterruptedException().initCause(e);
+        } catch (SVNException e) {
+            out.println("Unable to use the reference working copy of " + l.getURL() + ": " + e.getMessage());
+            Util.deleteContentsRecursive(local);
+            return false;
+        } catch (IOException e) {
+            out.println("Unable to use the reference working copy of " + l.getURL() + ": " + e.getMessage());
+            LOGGER.log(Level.FINE, "Failed to seed " + local + " from " + entry, e);
+            Util.deleteContentsRecursive(local);
+            return false;
+        }
+
+        evict(budget, entry);
+        return true;
+    }
+
+    /**
+     * Brings the working copy of the entry to the given revision, checking it out if need be.
+     */
+    private void refresh(ModuleLocation l, SVNUpdateClient svnuc, SVNRevision revision, SVNDepth depth,
+                         File entry, PrintStream out) throws SVNException, IOException {
+        File wc = new File(entry, WC);
+        svnuc.setEventHandler(QUIET);
+        svnuc.setExternalsHandler(ISVNExternalsHandler.DEFAULT);
+        try {
+            if (new File(wc, SVNFileUtil.getAdminDirectoryName()).isDirectory()) {
+                out.println("Updating reference working copy of " + l.getURL());
+                svnuc.doUpdate(wc, revision, depth, true, false);
+            } else {
+                out.println("Checking out reference working copy of " + l.getURL());
+                Util.deleteRecursive(wc);
+                SvnCheckout checkout = svnuc.getOperationsFactory().createCheckout();
+                checkout.setSource(SvnTarget.fromURL(l.getSVNURL(), SVNRevision.HEAD));
+                checkout.setSingleTarget(SvnTarget.fromFile(wc));
+                checkout.setRevision(revision);
+                checkout.setDepth(depth);
+                checkout.setIgnoreExternals(l.isIgnoreExternalsOption());
+                checkout.setTargetWorkingCopyFormat(SubversionWorkspaceSelector.workspaceFormat);
+                checkout.run();
+            }
+            // an update can grow or shrink the working copy as much as a check out
+            FileUtils.writeStringToFile(new File(entry, SIZE), String.valueOf(FileUtils.sizeOfDirectory(wc)));
+        } catch (SVNException e) {
+            // the entry may be half-way done. start over next time
+            Util.deleteRecursive(wc);
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in the given budget.
+     *
+     * @param inUse
+     *      Entry that was just used, which is never deleted.
+     */
+    private void evict(long budget, File inUse) {
+        File[] entries = root.listFiles();
+        if (entries == null) {
+            return;
+        }
+        long total = 0;
+        for (File entry : entries) {
+            total += sizeOf(entry);
+        }
+        if (total <= budget) {
+            return;
+        }
+
+        List<File> lru = new ArrayList<File>(Arrays.asList(entries));
+        Collections.sort(lru, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long x = new File(a, USED).lastModified(), y = new File(b, USED).lastModified();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        for (File entry : lru) {
+            if (total <= budget) {
+                break;
+            }
+            if (entry.equals(inUse)) {
+                continue;
+            }
+            long size = sizeOf(entry);
+            if (delete(entry)) {
+                total -= size;
+            }
+        }
+    }
+
+    /**
+     * Deletes the working copy of an entry, unless somebody is using it.
+     */
+    private boolean delete(File entry) {
+        ReentrantLock lock = lockOf(entry.getName());
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            RandomAccessFile lockFile = new RandomAccessFile(new File(entry, LOCK), "rw");
+            try {
+                FileLock fileLock = lockFile.getChannel().tryLock();
+                if (fileLock == null) {
+                    return false;
+                }
+                try {
+                    Util.deleteRecursive(new File(entry, WC));
+                    new File(entry, SIZE).delete();
+                    new File(entry, USED).delete();
+                } finally {
+                    fileLock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+            // the lock file stays, since others may be waiting to lock it. the next seed of the entry reuses it
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to evict " + entry, e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock lockOf(String key) {
+        ReentrantLock lock = locks.get(key);
+        if (lock == null) {
+            ReentrantLock newLock = new ReentrantLock();
+            lock = locks.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    private static long sizeOf(File entry) {
+        try {
+            return Long.parseLong(FileUtils.readFileToString(new File(entry, SIZE)).trim());
+        } catch (IOException e) {
+            return 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void touch(File f) throws IOException {
+        if (!f.exists()) {
+            FileUtils.writeStringToFile(f, "");
+        }
+        f.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Ignores the progress, but still lets the build be aborted.
+     */
+    private static final ISVNEventHandler QUIET = new ISVNEventHandler() {
+        public void handleEvent(SVNEvent event, double progress) {
+        }
+
+        public void checkCancelled() throws SVNCancelException {
+            if (Thread.interrupted()) {
+                throw new SVNCancelException();
+            }
+        }
+    };
+
+    /**
+     * Gets the cache of the node with the given root directory.
+     *
+     * @param nodeRootDir
+     *      Root directory of the node. If null, the root directory of the master is used.
+     */
+    static ReferenceWorkingCopyCache of(String nodeRootDir) {
+        File root;
+        if (DIR != null) {
+            root = new File(DIR);
+        } else if (nodeRootDir != null) {
+            root = new File(nodeRootDir, DIR_NAME);
+        } else {
+            Hudson h = Hudson.getInstance();
+            // a slave always knows its root directory. this is only for a task that didn't tell
+            root = new File(h != null ? h.getRootDir() : new File(System.getProperty("java.io.tmpdir")), DIR_NAME);
+        }
+        ReferenceWorkingCopyCache cache = CACHES.get(root);
+        if (cache == null) {
+            ReferenceWorkingCopyCache existing = CACHES.putIfAbsent(root, cache = new ReferenceWorkingCopyCache(root));
+            if (existing != null) {
+                cache = existing;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Directory of the cache on every node, instead of {@link #DIR_NAME} under the root directory of the node.
+     * Null if not set.
+     */
+    public static final String DIR = System.getProperty(ReferenceWorkingCopyCache.class.getName() + ".dir");
+
+    /**
+     * Name of the directory, in the root directory of the node, that holds the cache.
+     */
+    private static final String DIR_NAME = "svn-reference";
+
+    /**
+     * Caches by directory. There is only one per node, unless a node is used through several root directories.
+     */
+    private static final ConcurrentMap<File, ReferenceWorkingCopyCache> CACHES =
+        new ConcurrentHashMap<File, ReferenceWorkingCopyCache>();
+
+    private static final Logger LOGGER = Logger.getLogger(ReferenceWorkingCopyCache.class.getName());
+}
@@ -0,0 +1,427 @@
+package hudson.scm.subversion;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.io.ISVNTunnelProvider;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.ISVNRepositoryPool;
+import org.tmatesoft.svn.util.ISVNDebugLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Node-local pool of open repository sessions, so that the connection, TLS handshake and authentication
+ * of one operation are reused by the next ones instead of being done all over again.
+ *
+ * <p>
+ * Sessions are pooled per credential identity, normally the job whose credentials are used, so that a session
+ * authenticated for one job is never handed to another. Within an identity, a session is reused for any URL of the
+ * same host, as {@link org.tmatesoft.svn.core.wc.DefaultSVNRepositoryPool} does; SVNKit reconnects by itself if the
+ * URL is in another repository.
+ *
+ * <p>
+ * A session that has been idle for a while is tested before it's handed out again, idle sessions are closed after
+ * {@link #IDLE_TIMEOUT}, and at most {@link #MAX_PER_HOST} sessions per host are kept. Beyond that, sessions are
+ * still handed out but closed once returned.
+ *
+ * <p>
+ * For svn+ssh, this is what keeps the SSH connection, and with it the key exchange and authentication, from one
+ * operation to the next, since SVNKit's own SSH connection pooling is turned off. Idle tunnelled sessions are
+ * probed every {@link #KEEPALIVE} seconds so that firewalls don't silently drop them.
+ */
+public final class RepositorySessionPool {
+    private static final class Session {
+        final SVNRepository repository;
+        final String identity;
+        final String host;
+        /**
+         * What the session last authenticated with, so that keepalive probes can reconnect. Null while borrowed.
+         */
+        ISVNAuthenticationManager authManager;
+        long lastUsed;
+        /**
+         * When the session was last known to work.
+         */
+        long lastChecked;
+
+        Session(SVNRepository repository, String identity, String host) {
+            this.repository = repository;
+            this.identity = identity;
+            this.host = host;
+        }
+    }
+
+    /**
+     * Sessions waiting to be reused, most recently returned last. Guarded by this.
+     */
+    private final List<Session> idle = new ArrayList<Session>();
+
+    /**
+     * Pooled sessions currently in use. Guarded by this.
+     */
+    private final Map<SVNRepository, Session> borrowed = new IdentityHashMap<SVNRepository, Session>();
+
+    /**
+     * Number of pooled sessions per host, idle or in use. Guarded by this.
+     */
+    private final Map<String, Integer> open = new HashMap<String, Integer>();
+
+    /**
+     * Repository roots the sessions of this node have seen, least recently used first. Guarded by itself.
+     */
+    private final Map<String, SVNURL> roots = new LinkedHashMap<String, SVNURL>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SVNURL> eldest) {
+            return size() > MAX_ROOTS;
+        }
+    };
+
+    private Timer timer;
+
+    /**
+     * Gets a session to the given URL.
+     *
+     * <p>
+     * The session must be given back with {@link #release(SVNRepository)} instead of being closed.
+     *
+     * @param identity
+     *      Whose credentials the session is authenticated with. Never null.
+     */
+    public SVNRepository borrow(String identity, SVNURL url, ISVNAuthenticationManager authManager,
+                                ISVNTunnelProvider tunnelProvider, ISVNCanceller canceller) throws SVNException {
+        String host = hostOf(url);
+        Session s;
+        while ((s = takeIdle(identity, host)) != null) {
+            SVNRepository r = s.repository;
+            r.setAuthenticationManager(authManager);
+            r.setTunnelProvider(tunnelProvider);
+            r.setCanceller(canceller != null ? canceller : ISVNCanceller.NULL);
+            try {
+                if (System.currentTimeMillis() - s.lastChecked > CHECK_AFTER * 1000L) {
+                    r.testConnection();
+                }
+                r.setLocation(url, false);
+                return r;
+            } catch (SVNException e) {
+                LOGGER.log(Level.FINE, "Discarding a broken session to " + host, e);
+                synchronized (this) {
+                    borrowed.remove(r);
+                }
+                discard(s);
+            }
+        }
+
+        SVNRepository r = SVNRepositoryFactory.create(url);
+        r.setAuthenticationManager(authManager);
+        r.setTunnelProvider(tunnelProvider);
+        r.setCanceller(canceller != null ? canceller : ISVNCanceller.NULL);
+        synchronized (this) {
+            Integer n = open.get(host);
+            if (n == null || n.intValue() < MAX_PER_HOST) {
+                open.put(host, n == null ? 1 : n.intValue() + 1);
+                borrowed.put(r, new Session(r, identity, host));
+                startEviction();
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Gives back a session obtained from {@link #borrow(String, SVNURL, ISVNAuthenticationManager, ISVNTunnelProvider, ISVNCanceller)}.
+     * Sessions that aren't from the pool are closed.
+     */
+    public void release(SVNRepository r) {
+        Session s;
+        synchronized (this) {
+            s = borrowed.remove(r);
+        }
+        try {
+            // known once the session has connected, without asking the server again
+            addRoot(r.getRepositoryRoot(false));
+        } catch (SVNException e) {
+            LOGGER.log(Level.FINE, "Failed to get the repository root of " + r.getLocation(), e);
+        }
+        if (s == null) {
+            r.closeSession();
+            return;
+        }
+        // don't keep the build alive through the idle session, and only use the credentials for keepalive probes
+        s.authManager = r.getAuthenticationManager();
+        r.setAuthenticationManager(null);
+        r.setCanceller(ISVNCanceller.NULL);
+        s.lastUsed = s.lastChecked = System.currentTimeMillis();
+        synchronized (this) {
+            idle.add(s);
+        }
+    }
+
+    /**
+     * Creates a {@link ISVNRepositoryPool} for a {@link org.tmatesoft.svn.core.wc.SVNClientManager} that borrows
+     * from this pool, and gives everything back when the client manager is disposed.
+     */
+    public ISVNRepositoryPool lease(String identity, ISVNAuthenticationManager authManager,
+                                    ISVNTunnelProvider tunnelProvider) {
+        return new Lease(identity, authManager, tunnelProvider);
+    }
+
+    /**
+     * Closes all the idle sessions, so that the next operations authenticate again.
+     * Called when stored credentials change.
+     */
+    public void clear() {
+        List<Session> all;
+        synchronized (this) {
+            all = new ArrayList<Session>(idle);
+            idle.clear();
+        }
+        for (Session s : all) {
+            discard(s);
+        }
+    }
+
+    /**
+     * Finds the root of the repository that the given URL is in, among the roots sessions have seen so far.
+     *
+     * @return
+     *      null if no session has been to that repository yet.
+     */
+    public SVNURL getKnownRoot(SVNURL url) {
+        String u = url.toDecodedString();
+        synchronized (roots) {
+            for (String prefix = u; ; prefix = SVNPathUtil.removeTail(prefix)) {
+                SVNURL root = roots.get(prefix);
+                if (root != null) {
+                    return root;
+                }
+                if (prefix.indexOf('/', prefix.indexOf("://") + 3) < 0) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    private void addRoot(SVNURL root) {
+        if (root != null) {
+            synchronized (roots) {
+                roots.put(root.toDecodedString(), root);
+            }
+        }
+    }
+
+    private synchronized Session takeIdle(String identity, String host) {
+        for (int i = idle.size() - 1; i >= 0; i--) {
+            Session s = idle.get(i);
+            if (s.identity.equals(identity) && s.host.equals(host)) {
+                idle.remove(i);
+                s.authManager = null;
+                borrowed.put(s.repository, s);
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private void discard(Session s) {
+        s.authManager = null;
+        synchronized (this) {
+            Integer n = open.get(s.host);
+            if (n != null && n.intValue() > 1) {
+                open.put(s.host, n.intValue() - 1);
+            } else {
+                open.remove(s.host);
+            }
+        }
+        s.repository.closeSession();
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        long limit = now - IDLE_TIMEOUT * 1000L;
+        List<Session> expired = new ArrayList<Session>();
+        List<Session> probed = new ArrayList<Session>();
+        synchronized (this) {
+            for (Iterator<Session> itr = idle.iterator(); itr.hasNext(); ) {
+                Session s = itr.next();
+                if (s.lastUsed < limit) {
+                    itr.remove();
+                    expired.add(s);
+                } else if (KEEPALIVE > 0 && s.host.startsWith("svn+") && now - s.lastChecked > KEEPALIVE * 1000L) {
+                    // taken out while probed, so that nobody borrows it in the mean time
+                    itr.remove();
+                    probed.add(s);
+                }
+            }
+        }
+        for (Session s : expired) {
+            discard(s);
+        }
+        for (Session s : probed) {
+            s.repository.setAuthenticationManager(s.authManager);
+            try {
+                s.repository.testConnection();
+                s.lastChecked = System.currentTimeMillis();
+            } catch (SVNException e) {
+                LOGGER.log(Level.FINE, "Discarding a broken session to " + s.host, e);
+                discard(s);
+                continue;
+            } finally {
+                s.repository.setAuthenticationManager(null);
+            }
+            synchronized (this) {
+                idle.add(0, s);
+            }
+        }
+    }
+
+    private synchronized void startEviction() {
+        if (timer != null) {
+            return;
+        }
+        timer = new Timer("Subversion session eviction", true);
+        long period = Math.max(1, KEEPALIVE > 0 ? Math.min(KEEPALIVE, IDLE_TIMEOUT) / 2 : IDLE_TIMEOUT / 2) * 1000L;
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    evict();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to evict idle Subversion sessions", e);
+                }
+            }
+        }, period, period);
+    }
+
+    private static String hostOf(SVNURL url) {
+        return url.getProtocol() + "://" + url.getUserInfo() + '@' + url.getHost() + ':' + url.getPort();
+    }
+
+    /**
+     * Sessions of one {@link org.tmatesoft.svn.core.wc.SVNClientManager}.
+     */
+    private final class Lease implements ISVNRepositoryPool {
+        private final String identity;
+        private ISVNAuthenticationManager authManager;
+        private final ISVNTunnelProvider tunnelProvider;
+        private ISVNCanceller canceller;
+        private ISVNDebugLog debugLog;
+
+        /**
+         * Sessions borrowed for reuse within the client manager, by host. Guarded by this.
+         */
+        private final Map<String, SVNRepository> sessions = new HashMap<String, SVNRepository>();
+
+        Lease(String identity, ISVNAuthenticationManager authManager, ISVNTunnelProvider tunnelProvider) {
+            this.identity = identity;
+            this.authManager = authManager;
+            this.tunnelProvider = tunnelProvider;
+        }
+
+        public SVNRepository createRepository(SVNURL url, boolean mayReuse) throws SVNException {
+            if (!mayReuse) {
+                // the caller closes this one itself
+                SVNRepository r = SVNRepositoryFactory.create(url);
+                r.setAuthenticationManager(authManager);
+                r.setTunnelProvider(tunnelProvider);
+                r.setCanceller(canceller != null ? canceller : ISVNCanceller.NULL);
+                if (debugLog != null) {
+                    r.setDebugLog(debugLog);
+                }
+                return r;
+            }
+            String host = hostOf(url);
+            synchronized (this) {
+                SVNRepository r = sessions.get(host);
+                if (r != null) {
+                    r.setLocation(url, false);
+                    return r;
+                }
+                r = borrow(identity, url, authManager, tunnelProvider, canceller);
+                if (debugLog != null) {
+                    r.setDebugLog(debugLog);
+                }
+                sessions.put(host, r);
+                return r;
+            }
+        }
+
+        public synchronized void setAuthenticationManager(ISVNAuthenticationManager authManager) {
+            this.authManager = authManager;
+            for (SVNRepository r : sessions.values()) {
+                r.setAuthenticationManager(authManager);
+            }
+        }
+
+        public synchronized void setCanceller(ISVNCanceller canceller) {
+            this.canceller = canceller;
+            for (SVNRepository r : sessions.values()) {
+                r.setCanceller(canceller != null ? canceller : ISVNCanceller.NULL);
+            }
+        }
+
+        public synchronized void setDebugLog(ISVNDebugLog log) {
+            this.debugLog = log;
+            for (SVNRepository r : sessions.values()) {
+                r.setDebugLog(log);
+            }
+        }
+
+        public void shutdownConnections(boolean shutdownAll) {
+            // idle sessions are closed by the pool
+        }
+
+        public synchronized void dispose() {
+            for (SVNRepository r : sessions.values()) {
+                release(r);
+            }
+            sessions.clear();
+        }
+    }
+
+    /**
+     * Seconds a session may stay idle in the pool before it's closed.
+     */
+    public static int IDLE_TIMEOUT = Integer.getInteger(RepositorySessionPool.class.getName() + ".idleTimeout", 300);
+
+    /**
+     * Seconds a session may stay idle before it's tested when handed out again.
+     */
+    public static int CHECK_AFTER = Integer.getInteger(RepositorySessionPool.class.getName() + ".checkAfter", 60);
+
+    /**
+     * Seconds between two probes of an idle svn+ssh session. 0 to not probe them.
+     */
+    public static int KEEPALIVE = Integer.getInteger(RepositorySessionPool.class.getName() + ".keepAlive", 60);
+
+    /**
+     * Maximum number of pooled sessions per host.
+     */
+    public static int MAX_PER_HOST = Integer.getInteger(RepositorySessionPool.class.getName() + ".maxPerHost", 8);
+
+    /**
+     * Disables the pool, to get one new session per operation as before.
+     */
+    public static boolean DISABLED = Boolean.getBoolean(RepositorySessionPool.class.getName() + ".disabled");
+
+    /**
+     * Maximum number of repository roots remembered by {@link #getKnownRoot(SVNURL)}.
+     */
+    public static int MAX_ROOTS = Integer.getInteger(RepositorySessionPool.class.getName() + ".maxRoots", 256);
+
+    public static final RepositorySessionPool INSTANCE = new RepositorySessionPool();
+
+    private static final Logger LOGGER = Logger.getLogger(RepositorySessionPool.class.getName());
+}
@@ -0,0 +1,323 @@
+package hudson.scm.subversion;
+
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNUpdateClient;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Sparse check out of a module location: the subtrees to fetch, each with its own depth.
+ *
+ * <p>
+ * The profile is written one subtree per line, as a path relative to the module location followed by
+ * an optional depth ("infinity", "immediates", "files" or "empty", defaulting to "infinity").
+ * A path that contains whitespace is written in double quotes.
+ * Blank lines and lines starting with '#' are ignored. For example:
+ * <pre>
+ * src/main
+ * docs files
+ * "release notes" empty
+ * </pre>
+ *
+ * <p>
+ * The module location itself is checked out at depth "empty", then each subtree is brought in with a
+ * sticky depth, creating the directories leading to it at depth "empty" as well. Directories that are
+ * no longer in the profile are excluded from the working copy.
+ */
+public final class SparseProfile implements Serializable {
+    private final List<Entry> entries;
+
+    /**
+     * A subtree of the profile.
+     */
+    public static final class Entry implements Serializable {
+        /**
+         * Path relative to the module location, separated by '/', without leading or trailing '/'.
+         */
+        public final String path;
+
+        /**
+         * Name of the {@link SVNDepth}.
+         */
+        public final String depth;
+
+        public Entry(String path, String depth) {
+            this.path = path;
+            this.depth = depth;
+        }
+
+        public SVNDepth getDepth() {
+            return SVNDepth.fromString(depth);
+        }
+
+        /**
+         * Does this subtree contain the given path?
+         */
+        boolean includes(String p) {
+            if (path.length() == 0) {
+                return covers(p);
+            }
+            if (p.equals(path)) {
+                return true;
+            }
+            if (!p.startsWith(path + '/')) {
+                return false;
+            }
+            return covers(p.substring(path.length() + 1));
+        }
+
+        /**
+         * Does the depth reach the given path, relative to this subtree?
+         */
+        private boolean covers(String rest) {
+            if (SVNDepth.INFINITY.getName().equals(depth)) {
+                return true;
+            }
+            if (SVNDepth.EMPTY.getName().equals(depth)) {
+                return false;
+            }
+            // files or immediates. the working copy can't tell them apart by path alone
+            return rest.indexOf('/') < 0;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private SparseProfile(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Does the sparse check out contain the given path?
+     *
+     * @param path
+     *      Path relative to the module location, separated by '/'. The empty string is the module location itself.
+     */
+    public boolean includes(String path) {
+        String p = normalize(path);
+        if (p.length() == 0) {
+            return true;
+        }
+        for (Entry e : entries) {
+            if (e.includes(p)) {
+                return true;
+            }
+            // directories leading to a subtree are there, but only as empty directories
+            if (e.path.startsWith(p + '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Does the sparse check out contain the given path from the repository?
+     *
+     * @param base
+     *      Path of the module location in the repository, as computed by {@link #getRepositoryPath(SVNURL, SVNURL)}.
+     * @param path
+     *      Path in the repository, as reported by "svn log".
+     */
+    public boolean includesRepositoryPath(String base, String path) {
+        if (path.equals(base)) {
+            return true;
+        }
+        if (!path.startsWith(base + '/')) {
+            return false;
+        }
+        return includes(path.substring(base.length() + 1));
+    }
+
+    /**
+     * Does the log entry change anything in the sparse check out?
+     */
+    public boolean isRelevant(SVNLogEntry logEntry, String base) {
+        for (Object path : logEntry.getChangedPaths().keySet()) {
+            if (includesRepositoryPath(base, (String) path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Brings each subtree into a working copy of the module location.
+     *
+     * @param local
+     *      Working copy of the module location.
+     * @param revision
+     *      Revision to fetch, normally the revision the module location was just checked out or updated to,
+     *      so that all the subtrees are consistent.
+     */
+    public void apply(SVNUpdateClient svnuc, File local, long revision) throws SVNException {
+        for (Entry e : entries) {
+            if (e.path.length() == 0) {
+                svnuc.doUpdate(new File[]{local}, SVNRevision.create(revision), e.getDepth(), true, true, false);
+            } else {
+                svnuc.doUpdate(new File[]{new File(local, e.path)}, SVNRevision.create(revision), e.getDepth(),
+                    true, true, true);
+            }
+        }
+        exclude(svnuc, local, "", revision);
+    }
+
+    /**
+     * Excludes the directories under a directory leading to the subtrees that are not in the profile anymore.
+     * The sticky depth of each subtree already takes care of what is inside it.
+     */
+    private void exclude(SVNUpdateClient svnuc, File dir, String path, long revision) throws SVNException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (!child.isDirectory() || child.getName().equals(SVNFileUtil.getAdminDirectoryName())) {
+                continue;
+            }
+            String p = path.length() == 0 ? child.getName() : path + '/' + child.getName();
+            if (isInSubtree(p)) {
+                continue;
+            }
+            if (isLeading(p)) {
+                exclude(svnuc, child, p, revision);
+            } else {
+                svnuc.doUpdate(new File[]{child}, SVNRevision.create(revision), SVNDepth.EXCLUDE, true, true, false);
+            }
+        }
+    }
+
+    private boolean isInSubtree(String p) {
+        for (Entry e : entries) {
+            if (e.includes(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isLeading(String p) {
+        for (Entry e : entries) {
+            if (e.path.startsWith(p + '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (Entry e : entries) {
+            String path = e.path.length() == 0 ? "." : e.path;
+            if (WHITESPACE.matcher(path).find()) {
+                path = '"' + path + '"';
+            }
+            buf.append(path).append(' ').append(e.depth).append('\n');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Parses the textual form of the profile.
+     *
+     * @return
+     *      null if the text doesn't define any subtree, meaning the module location isn't sparse.
+     * @throws IllegalArgumentException
+     *      if a line can't be parsed.
+     */
+    public static SparseProfile parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        List<Entry> entries = new ArrayList<Entry>();
+        for (String line : text.split("\r?\n")) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens;
+            if (line.startsWith("\"")) {
+                int end = line.indexOf('"', 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated quote in: " + line);
+                }
+                String rest = line.substring(end + 1);
+                if (rest.length() > 0 && !Character.isWhitespace(rest.charAt(0))) {
+                    throw new IllegalArgumentException("Expected whitespace after the quoted path in: " + line);
+                }
+                rest = rest.trim();
+                String[] more = rest.length() == 0 ? new String[0] : WHITESPACE.split(rest);
+                tokens = new String[more.length + 1];
+                tokens[0] = line.substring(1, end);
+                System.arraycopy(more, 0, tokens, 1, more.length);
+            } else {
+                tokens = WHITESPACE.split(line);
+            }
+            if (tokens.length > 2) {
+                throw new IllegalArgumentException("Expected a path and a depth, but got: " + line);
+            }
+            String depth = SVNDepth.INFINITY.getName();
+            if (tokens.length == 2) {
+                SVNDepth d = SVNDepth.fromString(tokens[1]);
+                if (d != SVNDepth.EMPTY && d != SVNDepth.FILES && d != SVNDepth.IMMEDIATES
+                    && d != SVNDepth.INFINITY) {
+                    throw new IllegalArgumentException("Unknown depth " + tokens[1] + " in: " + line);
+                }
+                depth = d.getName();
+            }
+            String path = normalize(tokens[0]);
+            if (path.equals("..") || path.startsWith("../") || path.contains("/../")) {
+                throw new IllegalArgumentException("Path must be inside the module location: " + line);
+            }
+            entries.add(new Entry(path, depth));
+        }
+        return entries.isEmpty() ? null : new SparseProfile(entries);
+    }
+
+    /**
+     * Computes the path of a module location in the repository, to be used with
+     * {@link #includesRepositoryPath(String, String)}.
+     */
+    public static String getRepositoryPath(SVNURL url, SVNURL repositoryRoot) {
+        String path = url.getPath().substring(repositoryRoot.getPath().length());
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path.length() > 0 && !path.startsWith("/")) {
+            path = '/' + path;
+        }
+        return path;
+    }
+
+    private static String normalize(String path) {
+        String p = path.replace('\\', '/');
+        while (p.startsWith("./")) {
+            p = p.substring(2);
+        }
+        while (p.startsWith("/")) {
+            p = p.substring(1);
+        }
+        while (p.endsWith("/")) {
+            p = p.substring(0, p.length() - 1);
+        }
+        return p.equals(".") ? "" : p;
+    }
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final long serialVersionUID = 1L;
+}
@@ -26,16 +26,17 @@ package hudson.scm.subversion;
 import hudson.remoting.Which;
 import hudson.scm.SubversionEventHandlerImpl;
 import hudson.scm.SubversionSCM.External;
+import hudson.scm.SubversionSCM.OutputMode;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.URL;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.tmatesoft.svn.core.SVNCancelException;
-import org.tmatesoft.svn.core.SVNErrorCode;
-import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNURL;
@@ -54,13 +55,21 @@ final class SubversionUpdateEventHandler extends SubversionEventHandlerImpl impl
     private static final Logger LOGGER = Logger.getLogger(SubversionUpdateEventHandler.class.getName());
     /**
      * External urls that are fetched through svn:externals.
-     * We add to this collection as we find them.
+     * We add to this collection as we find them, once per workspace-relative path.
      */
     private final List<External> externals;
+    /**
+     * {@link #externals} by path, seeded with what other handlers recorded in the list before this one.
+     */
+    private Map<String, External> byPath;
     /**
      * Relative path from the workspace root to the module root.
      */
     private final String modulePath;
+    /**
+     * Revisions unpinned externals are fetched at, per repository root. Can be null.
+     */
+    private Map<String, Long> pinnedRevisions;
 
     public SubversionUpdateEventHandler(PrintStream out, List<External> externals, File moduleDir, String modulePath) {
         super(out, moduleDir);
@@ -68,16 +77,22 @@ final class SubversionUpdateEventHandler extends SubversionEventHandlerImpl impl
         this.modulePath = modulePath;
     }
 
-    public void handleEvent(SVNEvent event, double progress) throws SVNException {
-        File file = event.getFile();
-        String path = null;
-        try {
-            path = getRelativePath(file);
-        } catch (IOException e) {
-            throw new SVNException(SVNErrorMessage.create(SVNErrorCode.FS_GENERAL), e);
-        }
-        path = getLocalPath(path);
+    public SubversionUpdateEventHandler(PrintStream out, List<External> externals, File moduleDir, String modulePath,
+                                        OutputMode mode) {
+        super(out, moduleDir, mode);
+        this.externals = externals;
+        this.modulePath = modulePath;
+    }
+
+    /**
+     * Makes the externals without a fixed revision come from the same snapshot as the module locations
+     * of the same repository.
+     */
+    void setPinnedRevisions(Map<String, Long> pinnedRevisions) {
+        this.pinnedRevisions = pinnedRevisions;
+    }
 
+    public void handleEvent(SVNEvent event, double progress) throws SVNException {
         /*
          * Gets the current action. An action is represented by SVNEventAction.
          * In case of an update an  action  can  be  determined  via  comparing
@@ -100,9 +115,8 @@ final class SubversionUpdateEventHandler extends SubversionEventHandlerImpl impl
             } else {
                 out.println(Messages.SubversionUpdateEventHandler_FetchExternal(
                     ext.getResolvedURL(), Long.valueOf(ext.getRevision().getNumber()), event.getFile()));
-                //#1539 - an external inside an external needs to have the path appended 
-                externals.add(
-                    new External(modulePath + "/" + path.substring(0, path.length() - ext.getPath().length()), ext));
+                //#1539 - an external inside an external is relative to the module, like any other file
+                addExternal(event.getFile(), ext.getResolvedURL(), ext.getRevision().getNumber());
             }
             return;
         }
@@ -127,7 +141,47 @@ final class SubversionUpdateEventHandler extends SubversionEventHandlerImpl impl
 			SVNRevision externalRevision, SVNRevision externalPegRevision,
 			String externalsDefinition, SVNRevision externalsWorkingRevision) {
 		// When an external has been found, add to externals list.
-		externals.add(new External(externalPath.getAbsolutePath(), externalURL, externalRevision.getNumber()));
+		addExternal(externalPath, externalURL, externalRevision.getNumber());
+		if (pinnedRevisions != null && externalRevision.getNumber() < 0) {
+			Long pinned = WorkspaceUpdater.UpdateTask.getPinnedRevision(pinnedRevisions, externalURL);
+			if (pinned != null) {
+				return new SVNRevision[] {SVNRevision.create(pinned.longValue()), externalPegRevision};
+			}
+		}
 		return new SVNRevision[] {externalRevision, externalPegRevision};
 	}
+
+    /**
+     * Records an external under its path relative to the workspace, unless it's already recorded.
+     */
+    private void addExternal(File dir, SVNURL url, long revision) {
+        String path;
+        try {
+            path = getRelativePath(dir);
+        } catch (IOException e) {
+            path = dir.getAbsolutePath();
+        }
+        if (!new File(path).isAbsolute()) {
+            String module = External.normalize(modulePath);
+            path = module.length() == 0 || module.equals(".") ? path : module + '/' + path;
+        }
+        path = External.normalize(path);
+        synchronized (externals) {
+            if (byPath == null) {
+                byPath = new LinkedHashMap<String, External>();
+                for (External e : externals) {
+                    String p = External.normalize(e.path);
+                    if (!byPath.containsKey(p)) {
+                        byPath.put(p, e);
+                    }
+                }
+            }
+            if (byPath.containsKey(path)) {
+                return;
+            }
+            External e = new External(path, url, revision);
+            byPath.put(path, e);
+            externals.add(e);
+        }
+    }
 }
\ No newline at end of file
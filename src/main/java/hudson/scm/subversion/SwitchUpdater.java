@@ -27,15 +27,16 @@
 package hudson.scm.subversion;
 
 import hudson.Extension;
-import hudson.model.Hudson;
+import hudson.model.TaskListener;
 import hudson.scm.SubversionSCM.External;
 import hudson.scm.SubversionSCM.ModuleLocation;
 import hudson.scm.SubversionSCM.SvnInfo;
-import hudson.triggers.SCMTrigger;
+import hudson.util.StreamTaskListener;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNInfo;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.SVNUpdateClient;
@@ -43,7 +44,7 @@ import org.tmatesoft.svn.core.wc.SVNWCClient;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.PrintStream;
 import java.util.List;
 
 /**
@@ -62,41 +63,72 @@ public class SwitchUpdater extends WorkspaceUpdater {
         return new TaskImpl();
     }
 
-    public static class TaskImpl extends UpdateTask {
+    public static class TaskImpl extends LocationUpdateTask {
+        /**
+         * What the previous build recorded about the working copies.
+         */
+        private transient WorkingCopyState state;
+
         /**
          * Returns true if we can use "svn switch" instead of "svn checkout"
          */
-        protected boolean isSwitchable() throws IOException {
-            for (ModuleLocation l : locations) {
-                String moduleName = l.getLocalDir();
-                File module = new File(ws,moduleName).getCanonicalFile(); // canonicalize to remove ".." and ".". See #474
+        protected boolean isSwitchable() throws IOException, InterruptedException {
+            state = WorkingCopyState.load(ws);
+            if (isParallel()) {
+                List<ParallelLocationRunner.Outcome<Boolean>> outcomes = new ParallelLocationRunner<Boolean>(this) {
+                    @Override
+                    protected Boolean perform(ModuleLocation l, SVNClientManager manager, PrintStream out)
+                        throws IOException {
+                        return Boolean.valueOf(isSwitchable(l, manager, new StreamTaskListener(out)));
+                    }
+                }.run(locations, parallelLocations);
+                for (ParallelLocationRunner.Outcome<Boolean> o : outcomes) {
+                    if (!o.value.booleanValue()) {
+                        return false;
+                    }
+                }
+                return true;
+            }
 
-                if(!module.exists()) {
-                    listener.getLogger().println("Checking out a fresh workspace because "+module+" doesn't exist");
+            for (ModuleLocation l : locations) {
+                if (!isSwitchable(l, manager, listener)) {
                     return false;
                 }
+            }
+            return true;
+        }
 
-                try {
-                    /** 
-                     * The following is used to figure out if the module points to a valid
-                     * working copy. The only way I found to do this is by checking something using
-                     * svnInfo, if this is not a valid working copy, it will throw an exception.
-                     */
-                    SVNInfo svnkitInfo = parseSvnInfo(module);
-                    SvnInfo svnInfo = new SvnInfo(svnkitInfo);
-                    String url = l.getURL();
-                    if(svnInfo.url.equals(url)) {
-                        listener.getLogger().println("Workspace is "+url+". Using 'svn switch' to perform update.");
-                    }
-                } catch (SVNException e) {
-                    if (e.getErrorMessage().getErrorCode()==SVNErrorCode.WC_NOT_DIRECTORY) {
-                        listener.getLogger().println("Checking out a fresh workspace because there's no workspace at "+module);
-                    } else {
-                        listener.getLogger().println("Checking out a fresh workspace because Hudson failed to detect the current workspace "+module);
-                        e.printStackTrace(listener.error(e.getMessage()));
-                    }
-                    return false;
+        private boolean isSwitchable(ModuleLocation l, SVNClientManager manager, TaskListener listener) throws IOException {
+            String moduleName = l.getLocalDir();
+            File module = new File(ws,moduleName).getCanonicalFile(); // canonicalize to remove ".." and ".". See #474
+
+            if(!module.exists()) {
+                listener.getLogger().println("Checking out a fresh workspace because "+module+" doesn't exist");
+                return false;
+            }
+
+            try {
+                /** 
+                 * The following is used to figure out if the module points to a valid
+                 * working copy. The only way I found to do this is by checking something using
+                 * svnInfo, if this is not a valid working copy, it will throw an exception.
+                 */
+                SvnInfo svnInfo = state.get(moduleName, module);
+                if (svnInfo == null) {
+                    svnInfo = new SvnInfo(parseSvnInfo(module, manager));
+                }
+                String url = l.getURL();
+                if(svnInfo.url.equals(url)) {
+                    listener.getLogger().println("Workspace is "+url+". Using 'svn switch' to perform update.");
                 }
+            } catch (SVNException e) {
+                if (e.getErrorMessage().getErrorCode()==SVNErrorCode.WC_NOT_DIRECTORY) {
+                    listener.getLogger().println("Checking out a fresh workspace because there's no workspace at "+module);
+                } else {
+                    listener.getLogger().println("Checking out a fresh workspace because Hudson failed to detect the current workspace "+module);
+                    e.printStackTrace(listener.error(e.getMessage()));
+                }
+                return false;
             }
             return true;
         }
@@ -107,7 +139,7 @@ public class SwitchUpdater extends WorkspaceUpdater {
          * @param workspace
          *      The target to run "svn info".
          */
-        private SVNInfo parseSvnInfo(File workspace) throws SVNException {
+        private SVNInfo parseSvnInfo(File workspace, SVNClientManager manager) throws SVNException {
             final SVNWCClient svnWc = manager.getWCClient();
             return svnWc.doInfo(workspace,SVNRevision.WORKING);
         }
@@ -117,58 +149,49 @@ public class SwitchUpdater extends WorkspaceUpdater {
             if (!isSwitchable())
                 return delegateTo(new CheckoutUpdater());
 
+            return performLocations("switch");
+        }
 
-            final SVNUpdateClient svnuc = manager.getUpdateClient();
-            final List<External> externals = new ArrayList<External>(); // store discovered externals to here
-
-            for (final ModuleLocation l : locations) {
-                try {
-                    File local = new File(ws, l.getLocalDir());
-                    SubversionUpdateEventHandler handler = new SubversionUpdateEventHandler(listener.getLogger(), externals, local, l.getLocalDir());
-                    svnuc.setEventHandler(handler);
-                    svnuc.setExternalsHandler(handler);
-                    
-                    svnuc.setIgnoreExternals(l.isIgnoreExternalsOption());
-                    preUpdate(l, local);
-
-                    SVNDepth svnDepth = getSvnDepth(l.getDepthOption());
-                    SVNRevision revision = getRevision(l);
-
-                    listener.getLogger().println("Switching " + l.remote + " revision: " +
-                        (revision != null ? revision.toString() : "null") + " depth:" + svnDepth +
-                        " ignoreExternals: " + l.isIgnoreExternalsOption());
-                    svnuc.doSwitch(local.getCanonicalFile(), l.getSVNURL(), SVNRevision.HEAD, revision, svnDepth, true, false);
-                } catch (final SVNException e) {
-                    //TODO find better solution than this workaround, svnkit uses the same exception and
-                    // the same error code in case of aborted builds and builds with invalid credentials
-                    if (e.getMessage() != null && e.getMessage().contains(SVN_CANCEL_EXCEPTION_MESSAGE)) {
-                        listener.error("Svn command was aborted");
-                        throw (InterruptedException) new InterruptedException().initCause(e);
-                    }
-
-                    if (e.getErrorMessage().getErrorCode() == SVNErrorCode.WC_LOCKED) {
-                        // work space locked. try fresh check out
-                        listener.getLogger().println("Workspace appear to be locked, so Failing the build");
-                        throw (InterruptedException) new InterruptedException().initCause(e);
-                    }
-                    if (e.getErrorMessage().getErrorCode() == SVNErrorCode.WC_OBSTRUCTED_UPDATE) {
-                        // HUDSON-1882. If existence of local files cause an update to fail,
-                        // revert to fresh check out
-                        listener.getLogger().println(e.getMessage()); // show why this happened. Sometimes this is caused by having a build artifact in the repository.
-                        listener.getLogger().println("Switch failed due to local files. Getting a fresh workspace");
-                        return delegateTo(new CheckoutUpdater());
-                    }
+        @Override
+        protected void performLocation(ModuleLocation l, SVNClientManager manager, TaskListener listener, List<External> externals)
+            throws SVNException, IOException {
+            doSwitch(l, manager, listener, externals);
+        }
 
-                    e.printStackTrace(listener.error("Failed to switch " + l.remote));
-                    // trouble-shooting probe for #591
-                    if (e.getErrorMessage().getErrorCode() == SVNErrorCode.WC_NOT_LOCKED) {
-                        listener.getLogger().println("Polled jobs are " + Hudson.getInstance().getDescriptorByType(SCMTrigger.DescriptorImpl.class).getItemsBeingPolled());
-                    }
-                    return null;
+        /**
+         * Performs "svn switch" on a single location.
+         *
+         * @param externals
+         *      Discovered externals are added here.
+         */
+        protected void doSwitch(ModuleLocation l, SVNClientManager manager, TaskListener listener, List<External> externals)
+            throws SVNException, IOException {
+            final SVNUpdateClient svnuc = manager.getUpdateClient();
+            File local = new File(ws, l.getLocalDir());
+            SubversionUpdateEventHandler handler = createEventHandler(listener.getLogger(), externals, local, l.getLocalDir());
+            svnuc.setEventHandler(handler);
+            svnuc.setExternalsHandler(handler);
+
+            svnuc.setIgnoreExternals(l.isIgnoreExternalsOption());
+            preUpdate(l, local, manager, listener);
+
+            SparseProfile profile = l.getParsedSparseProfile();
+            // for a sparse check out, keep the depth each subtree was checked out with
+            SVNDepth svnDepth = profile != null ? SVNDepth.UNKNOWN : getSvnDepth(l.getDepthOption());
+            SVNRevision revision = getRevision(l);
+
+            listener.getLogger().println("Switching " + l.remote + " revision: " +
+                (revision != null ? revision.toString() : "null") + " depth:" + svnDepth +
+                " ignoreExternals: " + l.isIgnoreExternalsOption());
+            try {
+                long updated = svnuc.doSwitch(local.getCanonicalFile(), l.getSVNURL(), SVNRevision.HEAD, revision, svnDepth, true, false);
+                if (profile != null) {
+                    // picks up the subtrees added to the profile since the last build
+                    profile.apply(svnuc, local.getCanonicalFile(), updated);
                 }
+            } finally {
+                handler.flush();
             }
-
-            return externals;
         }
 
         /**
@@ -178,12 +201,29 @@ public class SwitchUpdater extends WorkspaceUpdater {
          *      Remote repository that corresponds to the workspace.
          * @param local
          *      Local directory that gets the update from the module.
+         *      Subtypes that override this use the shared {@link #manager}, so the locations of
+         *      such a subtype are always switched one after another.
          * @throws SVNException 
          * @throws IOException 
          */
         protected void preUpdate(ModuleLocation module, File local) throws SVNException, IOException {
             // noop by default
         }
+
+        /**
+         * Same as {@link #preUpdate(ModuleLocation, File)}, but with the {@link SVNClientManager} and
+         * {@link TaskListener} to use instead of {@link #manager} and {@link #listener}, which
+         * are shared by all the locations when they are switched at the same time.
+         */
+        protected void preUpdate(ModuleLocation module, File local, SVNClientManager manager, TaskListener listener)
+            throws SVNException, IOException {
+            preUpdate(module, local);
+        }
+
+        @Override
+        protected boolean isPreUpdateThreadSafe() {
+            return !isOverridden(TaskImpl.class, "preUpdate", ModuleLocation.class, File.class);
+        }
     }
 
     @Extension(ordinal=100) // this is the default, so given a higher ordinal
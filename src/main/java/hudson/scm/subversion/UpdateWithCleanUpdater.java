@@ -24,18 +24,23 @@
 package hudson.scm.subversion;
 
 import hudson.Extension;
+import hudson.model.TaskListener;
 import hudson.scm.SubversionSCM.ModuleLocation;
 import org.apache.commons.io.FileUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.tmatesoft.svn.core.SVNCancelException;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.wc.ISVNStatusHandler;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNStatus;
 import org.tmatesoft.svn.core.wc.SVNStatusType;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * {@link WorkspaceUpdater} that removes all the untracked files before "svn update"
@@ -53,9 +58,57 @@ public class UpdateWithCleanUpdater extends WorkspaceUpdater {
     // mostly "svn update" plus extra
     public static class TaskImpl extends UpdateUpdater.TaskImpl {
         @Override
-        protected void preUpdate(ModuleLocation module, File local) throws SVNException {
+        protected void preUpdate(ModuleLocation module, File local, SVNClientManager manager, final TaskListener listener)
+            throws SVNException, IOException {
             listener.getLogger().println("Cleaning up " + local);
+            try {
+                clean(local, manager, !module.isIgnoreExternalsOption(), listener);
+            } catch (InterruptedException e) {
+                throw new SVNCancelException();
+            }
+        }
+
+        /**
+         * Cleans up a working copy, then its externals.
+         */
+        private void clean(File local, SVNClientManager manager, boolean externals, TaskListener listener)
+            throws SVNException, IOException, InterruptedException {
+            WorkingCopyScanner scanner = WorkingCopyScanner.open(local);
+            if (scanner == null) {
+                cleanWithStatus(local, manager, listener);
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            WorkingCopyScanner.Result result = scanner.scan(WorkingCopyScanner.THREADS);
 
+            List<File> deleted = new ArrayList<File>(result.unversioned);
+            deleted.addAll(result.obstructed);
+            int unversioned = WorkingCopyScanner.delete(deleted, WorkingCopyScanner.THREADS);
+            // the scan only knows that these files were touched. revert compares them with the pristine copies
+            // a file in a scheduled addition has nothing to be reverted to
+            List<File> modified = result.outsideOperations(result.modified);
+            revert(modified, SVNDepth.EMPTY, manager);
+            // what was in the way is gone. bring back what was versioned there
+            revert(result.obstructed, SVNDepth.INFINITY, manager);
+            listener.getLogger().println("Deleted " + unversioned + " unversioned, ignored or obstructing files and reverted "
+                + (modified.size() + result.obstructed.size()) + " touched files in " + local
+                + " (" + (System.currentTimeMillis() - start) + " ms)");
+
+            if (externals) {
+                for (File nested : result.nested) {
+                    clean(nested, manager, true, listener);
+                }
+            }
+        }
+
+        /**
+         * Cleans up through "svn status", for working copies that {@link WorkingCopyScanner} can't read.
+         */
+        private void cleanWithStatus(File local, SVNClientManager manager, final TaskListener listener)
+            throws SVNException {
+            final int[] deleted = new int[1];
+            final List<File> modified = new ArrayList<File>();
             manager.getStatusClient().doStatus(local, null, SVNDepth.INFINITY, false, false, true, false, new ISVNStatusHandler() {
                 public void handleStatus(SVNStatus status) throws SVNException {
                     SVNStatusType s = status.getContentsStatus();
@@ -63,15 +116,16 @@ public class UpdateWithCleanUpdater extends WorkspaceUpdater {
                      * Perform a delete on the file/directory if any of the following are meet:
                      * 1. The status of the file is unversioned.
                      * 2. The status of the file is ignored.
-                     * 3. The status of the file is modified.
-                     * 4. Unable to obtain the status of a specific file.
+                     * 3. Unable to obtain the status of a specific file.
                      * 
+                     * Modified files are reverted from the pristine copies afterward, instead of
+                     * being downloaded again by the update.
                      */
-                    if (s == SVNStatusType.STATUS_UNVERSIONED ||
+                    if (s == SVNStatusType.STATUS_MODIFIED) {
+                        modified.add(status.getFile());
+                    } else if (s == SVNStatusType.STATUS_UNVERSIONED ||
                     	s == SVNStatusType.STATUS_IGNORED ||
-                    	s == SVNStatusType.STATUS_MODIFIED ||
                     	s == SVNStatusType.STATUS_NONE) {
-                        listener.getLogger().println("Deleting "+status.getFile());
                         try {
                             File f = status.getFile();
                             if (f.isDirectory())
@@ -79,12 +133,24 @@ public class UpdateWithCleanUpdater extends WorkspaceUpdater {
                             else
                                 if (!f.delete())
                                 	throw new IOException("Failed to delete file: " + f.getAbsolutePath());
+                            deleted[0]++;
                         } catch (IOException e) {
                             throw new SVNException(SVNErrorMessage.UNKNOWN_ERROR_MESSAGE,e);
                         }
                     }
                 }
             }, null);
+            revert(modified, SVNDepth.EMPTY, manager);
+            listener.getLogger().println("Deleted " + deleted[0] + " files and reverted " + modified.size() + " modified files");
+        }
+
+        /**
+         * Restores the given files from the pristine copies in the working copy.
+         */
+        private void revert(List<File> files, SVNDepth depth, SVNClientManager manager) throws SVNException {
+            if (!files.isEmpty()) {
+                manager.getWCClient().doRevert(files.toArray(new File[files.size()]), depth, null);
+            }
         }
     }
 
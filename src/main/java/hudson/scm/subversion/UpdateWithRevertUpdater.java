@@ -24,11 +24,18 @@
 package hudson.scm.subversion;
 
 import hudson.Extension;
+import hudson.model.TaskListener;
 import hudson.scm.SubversionSCM.ModuleLocation;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNWCClient;
 
 /**
@@ -48,14 +55,101 @@ public class UpdateWithRevertUpdater extends WorkspaceUpdater {
     // mostly "svn update" plus extra
     public static class TaskImpl extends UpdateUpdater.TaskImpl {
         @Override
-        protected void preUpdate(ModuleLocation module, File local) throws SVNException, IOException {
+        protected void preUpdate(ModuleLocation module, File local, SVNClientManager manager, TaskListener listener)
+            throws SVNException, IOException {
             listener.getLogger().println("Reverting " + local + " ignoreExternals: " + module.isIgnoreExternalsOption());
             final SVNWCClient svnwc = manager.getWCClient();
             svnwc.setIgnoreExternals(module.isIgnoreExternalsOption());
-            svnwc.doRevert(new File[]{local.getCanonicalFile()}, getSvnDepth(module.getDepthOption()), null);
+            try {
+                revert(local.getCanonicalFile(), getSvnDepth(module.getDepthOption()), svnwc,
+                    !module.isIgnoreExternalsOption(), listener);
+            } catch (InterruptedException e) {
+                throw new SVNCancelException();
+            }
+        }
+
+        /**
+         * Reverts only what {@link WorkingCopyScanner} finds to be possibly modified,
+         * or the whole working copy if it can't be scanned.
+         */
+        private void revert(File wc, SVNDepth depth, SVNWCClient svnwc, boolean externals, TaskListener listener)
+            throws SVNException, IOException, InterruptedException {
+            WorkingCopyScanner scanner = WorkingCopyScanner.open(wc);
+            if (scanner == null) {
+                FULL.incrementAndGet();
+                svnwc.doRevert(new File[]{wc}, depth, null);
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            WorkingCopyScanner.Result result = scanner.scan(WorkingCopyScanner.THREADS);
+            if (result.isClean()) {
+                SKIPPED.incrementAndGet();
+                listener.getLogger().println("Nothing to revert in " + wc + " (" + (System.currentTimeMillis() - start) + " ms)");
+            } else {
+                TARGETED.incrementAndGet();
+                // what is in a scheduled operation is reverted along with the root of the operation
+                List<File> files = new ArrayList<File>(result.modified);
+                files.addAll(result.recorded);
+                files = result.outsideOperations(files);
+                // so are missing directories, which come back with their contents
+                List<File> trees = new ArrayList<File>(result.operations);
+                trees.addAll(result.outsideOperations(result.missing));
+                if (!files.isEmpty()) {
+                    svnwc.doRevert(files.toArray(new File[files.size()]), SVNDepth.EMPTY, null);
+                }
+                if (!trees.isEmpty()) {
+                    svnwc.doRevert(trees.toArray(new File[trees.size()]), SVNDepth.INFINITY, null);
+                }
+                REVERTED.addAndGet(files.size() + trees.size());
+                listener.getLogger().println("Reverted " + (files.size() + trees.size())
+                    + " possibly modified entries in " + wc + " (" + (System.currentTimeMillis() - start) + " ms)");
+            }
+
+            if (externals) {
+                for (File nested : result.nested) {
+                    revert(nested, SVNDepth.INFINITY, svnwc, true, listener);
+                }
+            }
         }
     }
 
+    /**
+     * Number of working copies that were reverted as a whole, because they couldn't be scanned.
+     */
+    public static long getFullReverts() {
+        return FULL.get();
+    }
+
+    /**
+     * Number of working copies where only the possibly modified entries were reverted.
+     */
+    public static long getTargetedReverts() {
+        return TARGETED.get();
+    }
+
+    /**
+     * Number of working copies that didn't need reverting at all.
+     */
+    public static long getSkippedReverts() {
+        return SKIPPED.get();
+    }
+
+    /**
+     * Number of entries reverted by the targeted reverts.
+     */
+    public static long getRevertedEntries() {
+        return REVERTED.get();
+    }
+
+    /**
+     * Outcome of the revert step on this node, since it started.
+     */
+    private static final AtomicLong FULL = new AtomicLong();
+    private static final AtomicLong TARGETED = new AtomicLong();
+    private static final AtomicLong SKIPPED = new AtomicLong();
+    private static final AtomicLong REVERTED = new AtomicLong();
+
     @Extension
     public static class DescriptorImpl extends WorkspaceUpdaterDescriptor {
         @Override
@@ -0,0 +1,510 @@
+package hudson.scm.subversion;
+
+import hudson.Util;
+import hudson.scm.util.NamedThreadFactory;
+import hudson.util.IOException2;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.internal.db.SVNWCDb;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the local changes of a 1.7 or 1.8 working copy without going through "svn status".
+ *
+ * <p>
+ * The node list is read once from the <tt>wc.db</tt> of the working copy, then the directory tree is walked
+ * by several threads and compared against it. Unversioned and ignored files are whatever is on disk but not in
+ * the node list. Versioned files whose size or timestamp differs from what was recorded are only <em>candidates</em>
+ * for modification, since the contents aren't compared with the pristine copies. A file that was merely touched
+ * shows up too, but a file with the recorded size and timestamp is never looked at again, which is what makes
+ * this cheap on big trees.
+ *
+ * <p>
+ * Externals are left alone, but listed so that the caller can scan them in turn. Any other working copy
+ * nested in this one is unversioned as far as this one is concerned.
+ */
+final class WorkingCopyScanner {
+    private final File root;
+
+    /**
+     * Effective row of each node, by path relative to {@link #root}.
+     */
+    private final Map<String, Node> nodes;
+
+    /**
+     * Paths with local changes recorded in <tt>wc.db</tt> itself, such as property changes and conflicts.
+     */
+    private final Set<String> recorded;
+
+    /**
+     * Roots of the scheduled additions, deletions, copies and moves.
+     */
+    private final Set<String> operations;
+
+    /**
+     * Paths of the directory externals defined in the working copy.
+     */
+    private final Set<String> externals;
+
+    private WorkingCopyScanner(File root, Map<String, Node> nodes, Set<String> recorded, Set<String> operations,
+                               Set<String> externals) {
+        this.root = root;
+        this.nodes = nodes;
+        this.recorded = recorded;
+        this.operations = operations;
+        this.externals = externals;
+    }
+
+    /**
+     * Reads the node list of a working copy.
+     *
+     * @param root
+     *      Root of the working copy.
+     * @return
+     *      null if the working copy doesn't keep its nodes in a <tt>wc.db</tt> that we understand,
+     *      in which case the caller should fall back to "svn status".
+     */
+    static WorkingCopyScanner open(File root) {
+        File db = new File(new File(root, SVNFileUtil.getAdminDirectoryName()), "wc.db");
+        if (!db.isFile()) {
+            return null;
+        }
+        try {
+            SqlJetDb sqljet = SqlJetDb.open(db, false);
+            try {
+                sqljet.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+                try {
+                    int format = sqljet.getOptions().getUserVersion();
+                    if (format < SVNWCDb.WC_FORMAT_17 || format > SVNWCDb.WC_FORMAT_18) {
+                        return null;
+                    }
+                    Map<String, Node> nodes = new HashMap<String, Node>();
+                    Set<String> recorded = new HashSet<String>();
+                    Set<String> operations = new HashSet<String>();
+                    readNodes(sqljet, nodes, operations);
+                    readActualNodes(sqljet, recorded);
+                    Set<String> externals = new HashSet<String>();
+                    readExternals(sqljet, externals);
+                    return new WorkingCopyScanner(root, nodes, recorded, operations, externals);
+                } finally {
+                    sqljet.commit();
+                }
+            } finally {
+                sqljet.close();
+            }
+        } catch (SqlJetException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + db, e);
+            return null;
+        }
+    }
+
+    /**
+     * Does the working copy define any <tt>svn:externals</tt>?
+     *
+     * @return null if the working copy doesn't keep its nodes in a <tt>wc.db</tt> that we understand.
+     */
+    static Boolean hasExternals(File root) {
+        File db = new File(new File(root, SVNFileUtil.getAdminDirectoryName()), "wc.db");
+        if (!db.isFile()) {
+            return null;
+        }
+        try {
+            SqlJetDb sqljet = SqlJetDb.open(db, false);
+            try {
+                sqljet.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+                try {
+                    int format = sqljet.getOptions().getUserVersion();
+                    if (format < SVNWCDb.WC_FORMAT_17 || format > SVNWCDb.WC_FORMAT_18) {
+                        return null;
+                    }
+                    ISqlJetCursor c = sqljet.getTable("EXTERNALS").open();
+                    try {
+                        return Boolean.valueOf(!c.eof());
+                    } finally {
+                        c.close();
+                    }
+                } finally {
+                    sqljet.commit();
+                }
+            } finally {
+                sqljet.close();
+            }
+        } catch (SqlJetException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + db, e);
+            return null;
+        }
+    }
+
+    private static void readNodes(SqlJetDb db, Map<String, Node> nodes, Set<String> operations) throws SqlJetException {
+        ISqlJetCursor c = db.getTable("NODES").open();
+        try {
+            while (!c.eof()) {
+                String path = c.getString("local_relpath");
+                long opDepth = c.getInteger("op_depth");
+                // the operation is recorded on every node it covers, at the depth of its root
+                if (opDepth > 0 && opDepth == depthOf(path)) {
+                    operations.add(path);
+                }
+                Node existing = nodes.get(path);
+                if (existing == null || existing.opDepth < opDepth) {
+                    nodes.put(path, new Node(opDepth, c.getString("presence"), c.getString("kind"),
+                        c.isNull("translated_size") ? -1 : c.getInteger("translated_size"),
+                        c.isNull("last_mod_time") ? -1 : c.getInteger("last_mod_time")));
+                }
+                c.next();
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private static void readActualNodes(SqlJetDb db, Set<String> recorded) throws SqlJetException {
+        ISqlJetCursor c = db.getTable("ACTUAL_NODE").open();
+        try {
+            while (!c.eof()) {
+                recorded.add(c.getString("local_relpath"));
+                c.next();
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private static void readExternals(SqlJetDb db, Set<String> externals) throws SqlJetException {
+        ISqlJetCursor c = db.getTable("EXTERNALS").open();
+        try {
+            while (!c.eof()) {
+                if ("dir".equals(c.getString("kind"))) {
+                    externals.add(c.getString("local_relpath"));
+                }
+                c.next();
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Walks the working copy and compares it with the node list.
+     *
+     * @param threads
+     *      Number of threads walking the tree.
+     */
+    Result scan(int threads) throws IOException, InterruptedException {
+        final Result result = new Result();
+        new ParallelWalk(threads) {
+            @Override
+            protected void visit(File dir, String path) {
+                result.seen.add(path);
+                File[] children = dir.listFiles();
+                if (children == null) {
+                    return;
+                }
+                for (File child : children) {
+                    String name = child.getName();
+                    if (path.length() == 0 && name.equals(SVNFileUtil.getAdminDirectoryName())) {
+                        continue;
+                    }
+                    String childPath = path.length() == 0 ? name : path + '/' + name;
+                    Node n = nodes.get(childPath);
+                    if (n == null || !n.isPresent()) {
+                        if (externals.contains(childPath)
+                            && new File(child, SVNFileUtil.getAdminDirectoryName()).exists()) {
+                            result.nested.add(child);
+                        } else {
+                            result.unversioned.add(child);
+                        }
+                        continue;
+                    }
+                    result.seen.add(childPath);
+                    if (n.isDirectory()) {
+                        if (!child.isDirectory()) {
+                            result.obstructed.add(child);
+                        } else if (!Util.isSymlink(child)) {
+                            submit(child, childPath);
+                        }
+                    } else if (n.isFile()) {
+                        if (child.isDirectory()) {
+                            result.obstructed.add(child);
+                        } else if (n.isStale(child)) {
+                            result.modified.add(child);
+                        }
+                    }
+                }
+            }
+        }.run(root, "");
+
+        for (Map.Entry<String, Node> e : nodes.entrySet()) {
+            String path = e.getKey();
+            if (e.getValue().isPresent() && !result.seen.contains(path) && result.seen.contains(parentOf(path))) {
+                result.missing.add(new File(root, path));
+            }
+        }
+        for (String path : operations) {
+            result.operations.add(new File(root, path));
+        }
+        for (String path : recorded) {
+            result.recorded.add(new File(root, path));
+        }
+        return result;
+    }
+
+    private static int depthOf(String path) {
+        if (path.length() == 0) {
+            return 0;
+        }
+        int depth = 1;
+        for (int i = path.indexOf('/'); i >= 0; i = path.indexOf('/', i + 1)) {
+            depth++;
+        }
+        return depth;
+    }
+
+    private static String parentOf(String path) {
+        int i = path.lastIndexOf('/');
+        return i < 0 ? "" : path.substring(0, i);
+    }
+
+    /**
+     * Outcome of {@link WorkingCopyScanner#scan(int)}.
+     */
+    static final class Result {
+        /**
+         * Unversioned and ignored files and directories. The contents of an unversioned directory aren't listed.
+         */
+        final List<File> unversioned = Collections.synchronizedList(new ArrayList<File>());
+        /**
+         * Versioned files whose size or timestamp doesn't match the working copy records.
+         */
+        final List<File> modified = Collections.synchronizedList(new ArrayList<File>());
+        /**
+         * Versioned files and directories that are gone. The contents of a missing directory aren't listed.
+         */
+        final List<File> missing = new ArrayList<File>();
+        /**
+         * Versioned files that are a directory on disk, and versioned directories that are a file on disk.
+         */
+        final List<File> obstructed = Collections.synchronizedList(new ArrayList<File>());
+        /**
+         * Nodes with local changes recorded in the working copy, regardless of what's on disk.
+         */
+        final List<File> recorded = new ArrayList<File>();
+        /**
+         * Roots of the scheduled additions, deletions, copies and moves. Only reverting a root,
+         * at depth infinity, undoes what is under it.
+         */
+        final List<File> operations = new ArrayList<File>();
+        /**
+         * Roots of the directory externals of this working copy. They aren't scanned.
+         */
+        final List<File> nested = Collections.synchronizedList(new ArrayList<File>());
+
+        private final Set<String> seen = Collections.synchronizedSet(new HashSet<String>());
+
+        /**
+         * Is there nothing that "svn revert" would have to look at?
+         */
+        boolean isClean() {
+            return modified.isEmpty() && obstructed.isEmpty() && missing.isEmpty() && recorded.isEmpty()
+                && operations.isEmpty();
+        }
+
+        /**
+         * Drops the files that are in one of the {@link #operations}.
+         */
+        List<File> outsideOperations(List<File> files) {
+            if (operations.isEmpty()) {
+                return files;
+            }
+            List<File> outside = new ArrayList<File>();
+            for (File f : files) {
+                if (!isInOperation(f)) {
+                    outside.add(f);
+                }
+            }
+            return outside;
+        }
+
+        private boolean isInOperation(File f) {
+            for (File op : operations) {
+                String p = op.getPath();
+                if (f.getPath().equals(p) || f.getPath().startsWith(p + File.separator)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Effective row of a node in the <tt>NODES</tt> table.
+     */
+    private static final class Node {
+        final long opDepth;
+        final String presence;
+        final String kind;
+        final long translatedSize;
+        /**
+         * In microseconds.
+         */
+        final long lastModTime;
+
+        Node(long opDepth, String presence, String kind, long translatedSize, long lastModTime) {
+            this.opDepth = opDepth;
+            this.presence = presence;
+            this.kind = kind;
+            this.translatedSize = translatedSize;
+            this.lastModTime = lastModTime;
+        }
+
+        boolean isPresent() {
+            return "normal".equals(presence) || "incomplete".equals(presence);
+        }
+
+        boolean isDirectory() {
+            return "dir".equals(kind);
+        }
+
+        boolean isFile() {
+            return "file".equals(kind);
+        }
+
+        boolean isStale(File f) {
+            return translatedSize < 0 || lastModTime < 0
+                || f.length() != translatedSize || !isSameTime(f.lastModified(), lastModTime);
+        }
+    }
+
+    /**
+     * Compares the modification time of a file with the one recorded in <tt>wc.db</tt>.
+     *
+     * @param onDisk
+     *      In milliseconds. Older JDKs only report whole seconds, so then only seconds are compared.
+     * @param recorded
+     *      In microseconds.
+     */
+    static boolean isSameTime(long onDisk, long recorded) {
+        if (onDisk % 1000 == 0) {
+            return onDisk / 1000 == recorded / 1000000;
+        }
+        return onDisk == recorded / 1000;
+    }
+
+    /**
+     * Runs a piece of code on a fixed number of threads, then waits for it and whatever it submitted to finish.
+     */
+    abstract static class ParallelWalk {
+        private final ExecutorService executor;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        ParallelWalk(int threads) {
+            executor = Executors.newFixedThreadPool(Math.max(1, threads), new NamedThreadFactory("svn working copy scanner"));
+        }
+
+        protected abstract void visit(File dir, String path) throws IOException;
+
+        protected final void submit(final File dir, final String path) {
+            pending.incrementAndGet();
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (failure.get() == null) {
+                            visit(dir, path);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        if (pending.decrementAndGet() == 0) {
+                            synchronized (ParallelWalk.this) {
+                                ParallelWalk.this.notifyAll();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        final void run(File dir, String path) throws IOException, InterruptedException {
+            submit(dir, path);
+            await();
+        }
+
+        /**
+         * Waits for everything submitted so far, and whatever that submits, to finish.
+         */
+        final void await() throws IOException, InterruptedException {
+            try {
+                synchronized (this) {
+                    while (pending.get() > 0) {
+                        wait();
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+                executor.awaitTermination(60, TimeUnit.SECONDS);
+            }
+            Throwable t = failure.get();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            if (t != null) {
+                throw new IOException2("Failed to walk the working copy", t);
+            }
+        }
+    }
+
+    /**
+     * Deletes the given files and directories on several threads.
+     *
+     * @return the number of files and directories that were deleted, not counting the contents of directories.
+     */
+    static int delete(List<File> files, int threads) throws IOException, InterruptedException {
+        final AtomicInteger deleted = new AtomicInteger();
+        ParallelWalk walk = new ParallelWalk(threads) {
+            @Override
+            protected void visit(File f, String path) throws IOException {
+                Util.deleteRecursive(f);
+                deleted.incrementAndGet();
+            }
+        };
+        for (File f : files) {
+            walk.submit(f, null);
+        }
+        walk.await();
+        return deleted.get();
+    }
+
+    /**
+     * Number of threads used to walk and clean up working copies.
+     */
+    static int THREADS = Integer.getInteger(WorkingCopyScanner.class.getName() + ".threads",
+        Math.max(2, Runtime.getRuntime().availableProcessors())).intValue();
+
+    private static final Logger LOGGER = Logger.getLogger(WorkingCopyScanner.class.getName());
+}
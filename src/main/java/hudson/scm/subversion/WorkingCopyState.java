@@ -0,0 +1,195 @@
+package hudson.scm.subversion;
+
+import hudson.scm.SubversionSCM.External;
+import hudson.scm.SubversionSCM.SvnInfo;
+import hudson.scm.SubversionWorkspaceSelector;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers what "svn info" said about the working copies of a workspace, so that it doesn't have to be asked
+ * again as long as the working copies haven't been touched.
+ *
+ * <p>
+ * Each working copy is recorded with a fingerprint made of the workspace format in use and the timestamps of its
+ * administrative area. Any Subversion operation on the working copy changes those timestamps, so a matching
+ * fingerprint means the recorded URL and revision are still what "svn info" would say.
+ *
+ * <p>
+ * Unless the operation happened within the granularity of the timestamps after the fingerprint was taken.
+ * Like git does for its index, a record taken that close to the last change of the working copy is
+ * never trusted, and the working copy is asked again.
+ *
+ * <p>
+ * Stored as a properties file named <tt>WORKSPACE@svn-state</tt>, next to the workspace, on the node that has it.
+ */
+public final class WorkingCopyState {
+    private final File file;
+    private final Properties props = new Properties();
+    private boolean dirty;
+
+    private WorkingCopyState(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the state of the given workspace. Never null.
+     */
+    public static WorkingCopyState load(File ws) {
+        File parent = ws.getAbsoluteFile().getParentFile();
+        WorkingCopyState state = new WorkingCopyState(
+            new File(parent != null ? parent : ws, ws.getName() + STATE_SUFFIX));
+        if (state.file.exists()) {
+            try {
+                InputStream in = new FileInputStream(state.file);
+                try {
+                    state.props.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to read " + state.file, e);
+                state.props.clear();
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Returns what was recorded for a working copy, provided it hasn't been touched since.
+     *
+     * @param path
+     *      Identifies the working copy in the workspace.
+     * @param wc
+     *      Root of the working copy.
+     * @return
+     *      null if nothing was recorded or the working copy has changed.
+     */
+    public synchronized SvnInfo get(String path, File wc) {
+        String key = keyOf(path);
+        String fingerprint = props.getProperty(key + ".fingerprint");
+        if (fingerprint == null || !fingerprint.equals(fingerprintOf(wc))) {
+            return null;
+        }
+        try {
+            if (isRacy(wc, Long.parseLong(props.getProperty(key + ".recorded")))) {
+                return null;
+            }
+            return new SvnInfo(props.getProperty(key + ".url"), Long.parseLong(props.getProperty(key + ".revision")));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records what "svn info" just said about a working copy.
+     */
+    public synchronized void put(String path, File wc, SvnInfo info) {
+        String fingerprint = fingerprintOf(wc);
+        if (fingerprint == null) {
+            forget(path);
+            return;
+        }
+        String key = keyOf(path);
+        props.setProperty(key + ".url", info.url);
+        props.setProperty(key + ".revision", String.valueOf(info.revision));
+        props.setProperty(key + ".fingerprint", fingerprint);
+        props.setProperty(key + ".recorded", String.valueOf(System.currentTimeMillis()));
+        dirty = true;
+    }
+
+    public synchronized void forget(String path) {
+        String key = keyOf(path);
+        dirty |= props.remove(key + ".url") != null;
+        props.remove(key + ".revision");
+        props.remove(key + ".fingerprint");
+        props.remove(key + ".recorded");
+    }
+
+    /**
+     * Writes the state back, if anything changed.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                props.store(out, "svn working copy state");
+            } finally {
+                out.close();
+            }
+            dirty = false;
+        } catch (IOException e) {
+            // only an optimization
+            LOGGER.log(Level.FINE, "Failed to write " + file, e);
+        }
+    }
+
+    /**
+     * Module locations and externals name the same directory in different ways, such as "./foo" and "foo".
+     */
+    private static String keyOf(String path) {
+        String p = External.normalize(path);
+        return p.length() == 0 ? "." : p;
+    }
+
+    /**
+     * @return null if the directory isn't a working copy root, or is in the middle of a change.
+     */
+    private static String fingerprintOf(File wc) {
+        File admin = new File(wc, SVNFileUtil.getAdminDirectoryName());
+        long adminModified = admin.lastModified();
+        if (adminModified == 0) {
+            return null;
+        }
+        // wc.db for 1.7 and later, entries for older formats
+        File db = new File(admin, "wc.db");
+        if (!db.exists()) {
+            db = new File(admin, "entries");
+        } else if (new File(admin, "wc.db-journal").exists() || new File(admin, "wc.db-wal").exists()) {
+            // a transaction is under way, or was interrupted and will be rolled back by the next operation
+            return null;
+        }
+        return SubversionWorkspaceSelector.workspaceFormat + ":" + adminModified + ":" + db.lastModified() + ":"
+            + db.length();
+    }
+
+    /**
+     * Could the working copy have changed after the given time without changing its fingerprint?
+     */
+    static boolean isRacy(File wc, long recorded) {
+        File admin = new File(wc, SVNFileUtil.getAdminDirectoryName());
+        File db = new File(admin, "wc.db");
+        if (!db.exists()) {
+            db = new File(admin, "entries");
+        }
+        long modified = Math.max(admin.lastModified(), db.lastModified());
+        // timestamps in whole seconds may be truncated by as much, or rounded to two seconds on FAT
+        long granularity = modified % 1000 == 0 ? 2000 : RACY_MILLIS;
+        return recorded < modified + granularity;
+    }
+
+    /**
+     * How long after the last change of a working copy a record of it is trusted,
+     * when the file system keeps timestamps finer than a second.
+     */
+    public static long RACY_MILLIS = Long.getLong(WorkingCopyState.class.getName() + ".racyMillis", 10);
+
+    /**
+     * Suffix of the file, next to the workspace, that keeps the state.
+     */
+    public static final String STATE_SUFFIX = "@svn-state";
+
+    private static final Logger LOGGER = Logger.getLogger(WorkingCopyState.class.getName());
+}
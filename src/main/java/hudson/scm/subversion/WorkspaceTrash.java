@@ -0,0 +1,330 @@
+package hudson.scm.subversion;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+import hudson.scm.util.NamedThreadFactory;
+import hudson.slaves.ComputerListener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Empties directories by moving their contents out of the way, so that a fresh checkout can start right away,
+ * and deletes what was moved in the background.
+ *
+ * <p>
+ * The contents are renamed into <tt>WORKSPACE@svn-trash</tt>, next to the workspace, so they stay on the
+ * same file system and the rename is cheap. A single low priority thread per node then deletes the trash,
+ * pausing every now and then so that it doesn't starve the builds of disk I/O. The pending trash is listed in
+ * a file in the root directory of the node, so deleting resumes when the node comes back after a restart.
+ */
+public final class WorkspaceTrash {
+    private WorkspaceTrash() {
+    }
+
+    /**
+     * Empties the given directory by moving its contents into the trash of the workspace.
+     * Whatever can't be moved is deleted right away.
+     *
+     * @param ws
+     *      Workspace that contains the directory.
+     * @param dir
+     *      Directory to empty. Either the workspace itself or a directory in it.
+     */
+    public static void wipe(File ws, File dir) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null || children.length == 0) {
+            return;
+        }
+
+        File parent = ws.getAbsoluteFile().getParentFile();
+        File trash = parent == null ? null : new File(parent, ws.getName() + TRASH_SUFFIX);
+        File bin = trash == null ? null :
+            new File(trash, Long.toString(System.currentTimeMillis(), 36) + '-' + COUNTER.incrementAndGet());
+        if (bin == null || !bin.mkdirs()) {
+            LOGGER.fine("Unable to create the trash for " + ws + ". Deleting " + dir + " right away");
+            Util.deleteContentsRecursive(dir);
+            return;
+        }
+
+        for (File child : children) {
+            if (!child.renameTo(new File(bin, child.getName()))) {
+                // for example a file held open on Windows
+                Util.deleteRecursive(child);
+            }
+        }
+
+        // anything else in the trash was left behind by a previous run that didn't get to register it
+        File[] bins = trash.listFiles();
+        if (bins != null) {
+            for (File b : bins) {
+                REAPER.add(b);
+            }
+        }
+    }
+
+    /**
+     * Resumes deleting the trash left over from the previous run of this node.
+     */
+    public static void resume() {
+        REAPER.start();
+    }
+
+    /**
+     * Same as {@link #resume()}, but also tells where the pending trash of this node is listed.
+     *
+     * @param rootDir
+     *      Root directory of the node.
+     */
+    public static void resume(File rootDir) {
+        REAPER.setRegistry(new File(rootDir, REGISTRY_NAME));
+        REAPER.start();
+    }
+
+    /**
+     * Deletes the registered trash one file at a time.
+     */
+    static final class Reaper implements Runnable {
+        /**
+         * Lists the trash that hasn't been deleted yet, one absolute path per line.
+         * Null until the root directory of the node is known, in which case the trash is only tracked in memory.
+         */
+        private File registry;
+
+        private final LinkedHashSet<File> pending = new LinkedHashSet<File>();
+
+        private boolean loaded;
+
+        private Thread thread;
+
+        /**
+         * Number of files deleted since the last pause.
+         */
+        private int deleted;
+
+        Reaper(File registry) {
+            this.registry = registry;
+        }
+
+        synchronized void setRegistry(File registry) {
+            if (registry.equals(this.registry)) {
+                return;
+            }
+            this.registry = registry;
+            // merges what was listed there with what was trashed in the mean time
+            loaded = false;
+            load();
+            persist();
+        }
+
+        synchronized void add(File bin) {
+            load();
+            if (pending.add(bin.getAbsoluteFile())) {
+                persist();
+            }
+            start();
+        }
+
+        synchronized void start() {
+            load();
+            if (!pending.isEmpty() && (thread == null || !thread.isAlive())) {
+                thread = new NamedThreadFactory("svn workspace trash reaper", Thread.MIN_PRIORITY).newThread(this);
+                thread.start();
+            }
+        }
+
+        public void run() {
+            // the trash that couldn't be deleted in this run
+            Set<File> failed = new HashSet<File>();
+            while (true) {
+                File bin;
+                synchronized (this) {
+                    if (failed.containsAll(pending)) {
+                        // what is left is retried the next time the reaper starts
+                        thread = null;
+                        return;
+                    }
+                    bin = pending.iterator().next();
+                }
+
+                try {
+                    delete(bin);
+                } catch (InterruptedException e) {
+                    // the rest is picked up next time
+                    synchronized (this) {
+                        thread = null;
+                    }
+                    return;
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to delete " + bin, e);
+                    failed.add(bin);
+                    synchronized (this) {
+                        // keeps it, behind the rest
+                        if (pending.remove(bin)) {
+                            pending.add(bin);
+                        }
+                    }
+                    continue;
+                }
+
+                synchronized (this) {
+                    pending.remove(bin);
+                    persist();
+                }
+                // only succeeds once the trash is empty
+                bin.getParentFile().delete();
+            }
+        }
+
+        private void delete(File f) throws IOException, InterruptedException {
+            if (f.isDirectory() && !Util.isSymlink(f)) {
+                File[] children = f.listFiles();
+                if (children != null) {
+                    for (File child : children) {
+                        delete(child);
+                    }
+                }
+            }
+            if (!f.delete() && f.exists()) {
+                throw new IOException("Unable to delete " + f);
+            }
+            if (++deleted >= PAUSE_EVERY) {
+                deleted = 0;
+                Thread.sleep(PAUSE_MILLIS);
+            }
+        }
+
+        private void load() {
+            if (loaded) {
+                return;
+            }
+            if (registry == null) {
+                Hudson h = Hudson.getInstance();
+                if (h == null) {
+                    // on a slave, until it connects
+                    return;
+                }
+                registry = new File(h.getRootDir(), REGISTRY_NAME);
+            }
+            loaded = true;
+            if (!registry.exists()) {
+                return;
+            }
+            try {
+                BufferedReader r = new BufferedReader(new FileReader(registry));
+                try {
+                    String line;
+                    while ((line = r.readLine()) != null) {
+                        File bin = new File(line);
+                        if (bin.exists()) {
+                            pending.add(bin);
+                        }
+                    }
+                } finally {
+                    r.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read " + registry, e);
+            }
+        }
+
+        private void persist() {
+            if (registry == null) {
+                return;
+            }
+            try {
+                if (pending.isEmpty()) {
+                    registry.delete();
+                    return;
+                }
+                List<File> bins = new ArrayList<File>(pending);
+                PrintWriter w = new PrintWriter(new FileWriter(registry));
+                try {
+                    for (File bin : bins) {
+                        w.println(bin.getPath());
+                    }
+                } finally {
+                    w.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to write " + registry, e);
+            }
+        }
+    }
+
+    /**
+     * Resumes deleting the trash of a node when it connects.
+     */
+    @Extension
+    public static final class ResumeOnConnect extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) throws IOException, InterruptedException {
+            VirtualChannel channel = c.getChannel();
+            Node node = c.getNode();
+            FilePath root = node != null ? node.getRootPath() : null;
+            if (channel != null && root != null) {
+                channel.call(new ResumeTask(root.getRemote()));
+            }
+        }
+    }
+
+    private static final class ResumeTask implements Callable<Void, RuntimeException> {
+        private final String rootDir;
+
+        ResumeTask(String rootDir) {
+            this.rootDir = rootDir;
+        }
+
+        public Void call() {
+            resume(new File(rootDir));
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Suffix of the directory, next to the workspace, that receives the trash.
+     */
+    public static final String TRASH_SUFFIX = "@svn-trash";
+
+    /**
+     * The reaper pauses after deleting this many files...
+     */
+    public static int PAUSE_EVERY = Integer.getInteger(WorkspaceTrash.class.getName() + ".pauseEvery", 1000);
+
+    /**
+     * ... for this many milliseconds.
+     */
+    public static long PAUSE_MILLIS = Long.getLong(WorkspaceTrash.class.getName() + ".pauseMillis", 50);
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /**
+     * Name of the file, in the root directory of the node, that lists the pending trash.
+     */
+    private static final String REGISTRY_NAME = "svn-trash.list";
+
+    private static final Reaper REAPER = new Reaper(null);
+
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceTrash.class.getName());
+}
@@ -26,24 +26,33 @@ package hudson.scm.subversion;
 import hudson.ExtensionPoint;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Describable;
+import hudson.model.Hudson;
 import hudson.model.TaskListener;
 import hudson.scm.RevisionParameterAction;
 import hudson.scm.SubversionSCM;
 import hudson.scm.SubversionSCM.External;
 import hudson.scm.SubversionSCM.ModuleLocation;
 import hudson.scm.util.RevisionUtil;
+import hudson.triggers.SCMTrigger;
+import hudson.util.StreamTaskListener;
 
 import org.kohsuke.stapler.export.ExportedBean;
 import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.auth.ISVNAuthenticationProvider;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Encapsulates the logic of how files are obtained from a subversion repository.
@@ -127,6 +136,39 @@ public abstract class WorkspaceUpdater extends AbstractDescribableImpl<Workspace
          */
         protected SubversionSCM.RevisionPolicy revisionPolicy;
 
+        /**
+         * Maximum number of locations to check out or update at the same time. 1 means one after another.
+         */
+        protected int parallelLocations = 1;
+
+        /**
+         * If true, the workspace is emptied by moving its contents to the {@link WorkspaceTrash}
+         * instead of deleting them before the check out.
+         */
+        protected boolean fastWipe;
+
+        /**
+         * Disk budget of the {@link ReferenceWorkingCopyCache} in megabytes. 0 to not use the cache.
+         */
+        protected long referenceCacheSize;
+
+        /**
+         * Root directory of the node the task runs on, which holds the {@link ReferenceWorkingCopyCache}.
+         * Can be null.
+         */
+        protected String nodeRootDir;
+
+        /**
+         * How the progress is written to the {@link #listener}.
+         */
+        protected SubversionSCM.OutputMode outputMode = SubversionSCM.OutputMode.FULL;
+
+        /**
+         * When the revision policy is by date, the revision that date was resolved to in each repository,
+         * keyed by the decoded repository root URL. Can be null.
+         */
+        protected Map<String, Long> pinnedRevisions;
+
         /**
          * Performs the checkout/update.
          *
@@ -148,6 +190,12 @@ public abstract class WorkspaceUpdater extends AbstractDescribableImpl<Workspace
             t.revisionParameterAction = this.revisionParameterAction;
             t.ws = this.ws;
             t.revisionPolicy = this.revisionPolicy;
+            t.parallelLocations = this.parallelLocations;
+            t.fastWipe = this.fastWipe;
+            t.referenceCacheSize = this.referenceCacheSize;
+            t.nodeRootDir = this.nodeRootDir;
+            t.outputMode = this.outputMode;
+            t.pinnedRevisions = this.pinnedRevisions;
 
             return t.perform();
         }
@@ -164,7 +212,107 @@ public abstract class WorkspaceUpdater extends AbstractDescribableImpl<Workspace
          * Determines the revision to check out for the given location.
          */
         protected SVNRevision getRevision(ModuleLocation location) {
-            return RevisionUtil.getRevision(location, revisionParameterAction, revisionPolicy, queueTime, buildTime);
+            SVNRevision revision = RevisionUtil.getRevision(location, revisionParameterAction, revisionPolicy,
+                queueTime, buildTime);
+            if (revision.getDate() != null && pinnedRevisions != null) {
+                // same snapshot as every other location of the repository
+                try {
+                    Long pinned = getPinnedRevision(pinnedRevisions, location.getSVNURL());
+                    if (pinned != null) {
+                        return SVNRevision.create(pinned.longValue());
+                    }
+                } catch (SVNException e) {
+                    // let the check out report the bad URL
+                }
+            }
+            return revision;
+        }
+
+        /**
+         * Finds the pinned revision of the repository the URL belongs to.
+         *
+         * @return null if the repository has no pinned revision.
+         */
+        protected static Long getPinnedRevision(Map<String, Long> pinnedRevisions, SVNURL url) {
+            String u = url.toDecodedString();
+            for (Map.Entry<String, Long> e : pinnedRevisions.entrySet()) {
+                if (u.equals(e.getKey()) || u.startsWith(e.getKey() + '/')) {
+                    return e.getValue();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns true if the locations should be processed concurrently.
+         *
+         * <p>
+         * Locations checked out into the same directory, or one inside another, share a tree,
+         * so they are always processed one after another.
+         */
+        protected boolean isParallel() {
+            return parallelLocations > 1 && locations.length > 1 && !hasNestedLocations(locations);
+        }
+
+        /**
+         * Returns true if the local directory of a location is the same as, or inside, that of another.
+         */
+        static boolean hasNestedLocations(ModuleLocation[] locations) {
+            String[] dirs = new String[locations.length];
+            for (int i = 0; i < locations.length; i++) {
+                dirs[i] = External.normalize(locations[i].getLocalDir());
+            }
+            for (int i = 0; i < dirs.length; i++) {
+                for (int j = 0; j < dirs.length; j++) {
+                    if (i != j && isSameOrInside(dirs[j], dirs[i])) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean isSameOrInside(String dir, String ancestor) {
+            return ancestor.length() == 0 || ancestor.equals(".") || dir.equals(ancestor) || dir.startsWith(ancestor + '/');
+        }
+
+        /**
+         * Reports the failure of the check out or update of a location.
+         *
+         * @return
+         *      Result of a fresh check out if local files got in the way, otherwise null.
+         * @throws InterruptedException
+         *      If the build was aborted, or the working copy is locked.
+         */
+        protected List<External> handleFailure(ModuleLocation l, SVNException e, String operation)
+            throws IOException, InterruptedException {
+            //TODO find better solution than this workaround, svnkit uses the same exception and
+            // the same error code in case of aborted builds and builds with invalid credentials
+            if (e.getMessage() != null && e.getMessage().contains(SVN_CANCEL_EXCEPTION_MESSAGE)) {
+                listener.error("Svn command was aborted");
+                throw (InterruptedException) new InterruptedException().initCause(e);
+            }
+
+            if (e.getErrorMessage().getErrorCode() == SVNErrorCode.WC_LOCKED) {
+                // work space locked. try fresh check out
+                listener.getLogger().println("Workspace appear to be locked, so Failing the build");
+                throw (InterruptedException) new InterruptedException().initCause(e);
+            }
+            if (e.getErrorMessage().getErrorCode() == SVNErrorCode.WC_OBSTRUCTED_UPDATE
+                    && !(this instanceof CheckoutUpdater.UpdateTaskImpl)) { // unless a fresh check out is what failed
+                // HUDSON-1882. If existence of local files cause an update to fail,
+                // revert to fresh check out
+                listener.getLogger().println(e.getMessage()); // show why this happened. Sometimes this is caused by having a build artifact in the repository.
+                listener.getLogger().println("Failed to " + operation + " due to local files. Getting a fresh workspace");
+                return delegateTo(new CheckoutUpdater().createTask());
+            }
+
+            e.printStackTrace(listener.error("Failed to " + operation + " " + l.remote));
+            // trouble-shooting probe for #591
+            if (e.getErrorMessage().getErrorCode() == SVNErrorCode.WC_NOT_LOCKED) {
+                listener.getLogger().println("Polled jobs are " + Hudson.getInstance().getDescriptorByType(SCMTrigger.DescriptorImpl.class).getItemsBeingPolled());
+            }
+            return null;
         }
 
         /**
@@ -221,6 +369,35 @@ public abstract class WorkspaceUpdater extends AbstractDescribableImpl<Workspace
             this.revisionPolicy = revisionPolicy;
         }
 
+        /**
+         * Sets the number of locations processed at the same time. For the tests only.
+         *
+         * @param parallelLocations number of locations.
+         */
+        void setParallelLocations(int parallelLocations) {
+            this.parallelLocations = parallelLocations;
+        }
+
+        /**
+         * Sets fast wipe mode. For the tests only.
+         *
+         * @param fastWipe true to move the workspace contents to the trash.
+         */
+        void setFastWipe(boolean fastWipe) {
+            this.fastWipe = fastWipe;
+        }
+
+        /**
+         * Creates the handler that reports the progress of a location, in the {@link #outputMode}.
+         */
+        SubversionUpdateEventHandler createEventHandler(PrintStream out, List<External> externals, File moduleDir,
+                                                        String modulePath) {
+            SubversionUpdateEventHandler handler = new SubversionUpdateEventHandler(out, externals, moduleDir,
+                modulePath, outputMode);
+            handler.setPinnedRevisions(pinnedRevisions);
+            return handler;
+        }
+
         /**
          * Sets listener.  For the tests only.
          *
@@ -231,6 +408,99 @@ public abstract class WorkspaceUpdater extends AbstractDescribableImpl<Workspace
         }
     }
 
+    /**
+     * {@link UpdateTask} that brings each of the {@link #locations} up to date on its own,
+     * such as "svn update" and "svn switch".
+     */
+    public static abstract class LocationUpdateTask extends UpdateTask {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Runs {@link #performLocation(ModuleLocation, SVNClientManager, TaskListener, List)} on each of
+         * the {@link #locations}, concurrently if {@link #isParallel()} and {@link #isPreUpdateThreadSafe()}.
+         *
+         * @param operation
+         *      Name of the operation for the console, such as "update".
+         * @return
+         *      Discovered externals, or null if a location failed.
+         */
+        protected final List<External> performLocations(final String operation) throws IOException, InterruptedException {
+            if (isParallel() && isPreUpdateThreadSafe()) {
+                List<ParallelLocationRunner.Outcome<List<External>>> outcomes = new ParallelLocationRunner<List<External>>(this) {
+                    @Override
+                    protected List<External> perform(ModuleLocation l, SVNClientManager manager, PrintStream out)
+                        throws SVNException, IOException {
+                        List<External> externals = new ArrayList<External>();
+                        performLocation(l, manager, new StreamTaskListener(out), externals);
+                        return externals;
+                    }
+                }.run(locations, parallelLocations);
+
+                // failures are handled in the order of locations, just like the sequential loop does
+                for (ParallelLocationRunner.Outcome<List<External>> o : outcomes) {
+                    if (o != null && o.error != null) {
+                        return handleFailure(o.location, o.error, operation);
+                    }
+                }
+                List<External> externals = new ArrayList<External>();
+                for (ParallelLocationRunner.Outcome<List<External>> o : outcomes) {
+                    externals.addAll(o.value);
+                }
+                return externals;
+            }
+
+            final List<External> externals = new ArrayList<External>(); // store discovered externals to here
+
+            for (final ModuleLocation l : locations) {
+                try {
+                    performLocation(l, manager, listener, externals);
+                } catch (final SVNException e) {
+                    return handleFailure(l, e, operation);
+                }
+            }
+
+            return externals;
+        }
+
+        /**
+         * Brings a single location up to date, for {@link #performLocations(String)}.
+         *
+         * @param manager
+         *      Use this instead of {@link #manager}, which is shared by all the locations.
+         * @param listener
+         *      Use this instead of {@link #listener}, which is shared by all the locations.
+         * @param externals
+         *      Discovered externals are added here.
+         */
+        protected abstract void performLocation(ModuleLocation l, SVNClientManager manager, TaskListener listener,
+                                                List<External> externals) throws SVNException, IOException;
+
+        /**
+         * Returns false if {@link #performLocation(ModuleLocation, SVNClientManager, TaskListener, List)}
+         * uses the shared {@link #manager} or {@link #listener}, so that the locations have to be processed
+         * one after another.
+         */
+        protected boolean isPreUpdateThreadSafe() {
+            return true;
+        }
+
+        /**
+         * Returns true if the class of this task, or one of its superclasses below {@code base},
+         * declares the given method. Used to tell the subtypes written against an older hook apart.
+         */
+        protected final boolean isOverridden(Class<?> base, String name, Class<?>... parameterTypes) {
+            for (Class<?> c = getClass(); c != base && c != null; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod(name, parameterTypes);
+                    return true;
+                } catch (NoSuchMethodException e) {
+                    // keep looking
+                }
+            }
+            return false;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -0,0 +1,35 @@
+package hudson.scm.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ThreadFactory} for the background threads of this plugin.
+ * <p/>
+ * Threads are daemon threads, so that they never keep the JVM from shutting down,
+ * and carry a recognizable name in thread dumps.
+ */
+public final class NamedThreadFactory implements ThreadFactory {
+
+    private final String name;
+
+    private final int priority;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    public NamedThreadFactory(String name) {
+        this(name, Thread.NORM_PRIORITY);
+    }
+
+    public NamedThreadFactory(String name, int priority) {
+        this.name = name;
+        this.priority = priority;
+    }
+
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name + " #" + count.incrementAndGet());
+        t.setDaemon(true);
+        t.setPriority(priority);
+        return t;
+    }
+}
@@ -0,0 +1,111 @@
+package hudson.scm;
+
+import hudson.scm.SubversionSCM.DescriptorImpl.Credential;
+import hudson.scm.SubversionSCM.DescriptorImpl.PasswordCredential;
+
+import java.util.Hashtable;
+import java.util.Map;
+
+/**
+ * Measures a credential lookup with {@link CredentialIndex}, next to the scans the stores used to do.
+ *
+ * <p>
+ * Run with the number of stored credentials and optionally the number of rounds:
+ * <pre>
+ * java hudson.scm.CredentialIndexBenchmark 10000 5
+ * </pre>
+ */
+public class CredentialIndexBenchmark {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int lookups = 10000;
+
+        Map<String, Credential> table = new Hashtable<String, Credential>();
+        for (int i = 0; i < count; i++) {
+            table.put("<https://host" + i + ".example.com:443> Subversion", new PasswordCredential("u" + i, "p"));
+            table.put("https://host" + i + ".example.com/svn/project" + i + "/", new PasswordCredential("u" + i, "p"));
+        }
+        String[] realms = new String[lookups];
+        String[] urls = new String[lookups];
+        for (int i = 0; i < lookups; i++) {
+            int host = (i * 7919) % count;
+            // a realm that is only found by the "contains" fallback
+            realms[i] = "<https://host" + host + ".example.com:443> Subversion Repository";
+            urls[i] = "https://host" + host + ".example.com/svn/project" + host + "/trunk/src/main/java";
+        }
+
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            CredentialIndex index = new CredentialIndex(table);
+            long built = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int found = 0;
+            for (String realm : realms) {
+                if (scanRealm(table, realm) != null) {
+                    found++;
+                }
+            }
+            for (String url : urls) {
+                if (scanUrl(table, url) != null) {
+                    found++;
+                }
+            }
+            long scanned = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (String realm : realms) {
+                if (index.getForRealm(realm) != null) {
+                    found--;
+                }
+            }
+            for (String url : urls) {
+                if (indexUrl(index, url) != null) {
+                    found--;
+                }
+            }
+            long indexed = System.nanoTime() - start;
+
+            System.out.printf("round %d: scan %d ns/lookup, index %d ns/lookup, index built in %d ms%s%n",
+                Integer.valueOf(r + 1), Long.valueOf(scanned / (2 * lookups)), Long.valueOf(indexed / (2 * lookups)),
+                Long.valueOf(built / 1000000), found == 0 ? "" : " (results differ!)");
+        }
+    }
+
+    private static Credential scanRealm(Map<String, Credential> table, String realm) {
+        Credential cred = table.get(realm);
+        if (cred == null) {
+            for (String key : table.keySet()) {
+                if (realm.contains(key)) {
+                    return table.get(key);
+                }
+            }
+        }
+        return cred;
+    }
+
+    private static Credential scanUrl(Map<String, Credential> table, String url) {
+        Credential cred;
+        while ((cred = table.get(url)) == null && url.length() > 0) {
+            url = shorten(url);
+        }
+        return cred;
+    }
+
+    private static Credential indexUrl(CredentialIndex index, String url) {
+        boolean[] prefixes = index.prefixesOf(url);
+        while (!prefixes[url.length()] && url.length() > 0) {
+            url = shorten(url);
+        }
+        return index.get(url);
+    }
+
+    private static String shorten(String url) {
+        int i = url.lastIndexOf('/');
+        if (i >= 0 && i + 1 < url.length()) {
+            i++;
+        }
+        return i >= 0 ? url.substring(0, i) : "";
+    }
+}
@@ -0,0 +1,91 @@
+package hudson.scm;
+
+import hudson.scm.SubversionSCM.DescriptorImpl.Credential;
+import hudson.scm.SubversionSCM.DescriptorImpl.PasswordCredential;
+
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link CredentialIndex}, against the scans it replaces.
+ */
+public class CredentialIndexTest extends TestCase {
+
+    private static final String[] PARTS = {"svn://", "https://", "host", "other", ":8080", "/", "repo", "trunk",
+        "a", "<", ">", " Subversion", "@"};
+
+    public void testPrefixes() {
+        Map<String, Credential> table = new Hashtable<String, Credential>();
+        table.put("svn://host/repo/", new PasswordCredential("a", "a"));
+        table.put("svn://host/repo/trunk", new PasswordCredential("b", "b"));
+        table.put("svn://other/", new PasswordCredential("c", "c"));
+        CredentialIndex index = new CredentialIndex(table);
+
+        String url = "svn://host/repo/trunk/src";
+        boolean[] prefixes = index.prefixesOf(url);
+        for (int i = 0; i <= url.length(); i++) {
+            assertEquals(url.substring(0, i), table.containsKey(url.substring(0, i)), prefixes[i]);
+        }
+        assertFalse(index.prefixesOf("svn://host/rep")[14]);
+    }
+
+    public void testRealm() {
+        Map<String, Credential> table = new Hashtable<String, Credential>();
+        Credential exact = new PasswordCredential("a", "a");
+        Credential host = new PasswordCredential("b", "b");
+        table.put("<svn://host:3690> Repository", exact);
+        table.put("<svn://host:3690>", host);
+        CredentialIndex index = new CredentialIndex(table);
+
+        assertSame(exact, index.getForRealm("<svn://host:3690> Repository"));
+        assertSame(host, index.getForRealm("<svn://host:3690> Other"));
+        assertNull(index.getForRealm("<svn://other:3690> Repository"));
+    }
+
+    public void testSameAsScan() {
+        Random random = new Random(1);
+        for (int round = 0; round < 200; round++) {
+            Map<String, Credential> table = new Hashtable<String, Credential>();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                table.put(randomString(random), new PasswordCredential("u" + i, "p"));
+            }
+            CredentialIndex index = new CredentialIndex(table);
+
+            for (int i = 0; i < 50; i++) {
+                String s = randomString(random);
+                assertSame(s, scanRealm(table, s), index.getForRealm(s));
+
+                boolean[] prefixes = index.prefixesOf(s);
+                for (int j = 0; j <= s.length(); j++) {
+                    assertEquals(s, table.containsKey(s.substring(0, j)), prefixes[j]);
+                }
+            }
+        }
+    }
+
+    private static String randomString(Random random) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = random.nextInt(6); i > 0; i--) {
+            buf.append(PARTS[random.nextInt(PARTS.length)]);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * What the global store used to do.
+     */
+    private static Credential scanRealm(Map<String, Credential> table, String realm) {
+        Credential cred = table.get(realm);
+        if (cred == null) {
+            for (String key : table.keySet()) {
+                if (realm.contains(key)) {
+                    cred = table.get(key);
+                    break;
+                }
+            }
+        }
+        return cred;
+    }
+}
@@ -71,6 +71,8 @@ public class PerJobCredentialStoreTest extends AbstractSubversionTest {
         SubversionSCM.DescriptorImpl.Credential credential = new SubversionSCM.DescriptorImpl.PasswordCredential(
                 testSvnUser, testSvnPassword);
         credentialStore.acknowledgeAuthentication(testSvnRealm, credential);
+        //Changes are written in the background
+        PerJobCredentialStore.flush();
         assertTrue(credentialStore.getSaveableListener().isFileChanged());
     }
 
@@ -81,13 +83,38 @@ public class PerJobCredentialStoreTest extends AbstractSubversionTest {
                 testSvnUser, testSvnPassword);
         //Store password credentials
         credentialStore.acknowledgeAuthentication(testSvnRealm, credential);
+        PerJobCredentialStore.flush();
         //Reset file changed status flag in order to acknowledge null credentials
         credentialStore.getSaveableListener().resetChangedStatus();
         //Emulate call from slave.
         credentialStore.acknowledgeAuthentication(testSvnRealm, null);
+        PerJobCredentialStore.flush();
         assertFalse(credentialStore.getSaveableListener().isFileChanged());
     }
 
+    public void testAcknowledgeFromTwoStores() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        PerJobCredentialStore first = new PerJobCredentialStore(p, null);
+        PerJobCredentialStore second = new PerJobCredentialStore(p, null);
+        first.acknowledgeAuthentication("<svn://first:3690>",
+            new SubversionSCM.DescriptorImpl.PasswordCredential("alice", testSvnPassword));
+        second.acknowledgeAuthentication("<svn://second:3690>",
+            new SubversionSCM.DescriptorImpl.PasswordCredential("bob", testSvnPassword));
+        PerJobCredentialStore.flush();
+
+        //Both changes made it to the file
+        PerJobCredentialStore read = new PerJobCredentialStore(p, null);
+        assertEquals("alice", getUserName(read, "svn://first/repo", "<svn://first:3690>"));
+        assertEquals("bob", getUserName(read, "svn://second/repo", "<svn://second:3690>"));
+    }
+
+    private static String getUserName(PerJobCredentialStore store, String url, String realm) throws SVNException {
+        SubversionSCM.DescriptorImpl.Credential credential = store.getCredential(
+            new SerializableSVNURL(SVNURL.parseURIDecoded(url)), realm);
+        assertNotNull(realm, credential);
+        return credential.createSVNAuthentication(ISVNAuthenticationManager.PASSWORD).getUserName();
+    }
+
     @Bug(3)
     public void testMatrixConfigurationCredentialsFileNamePath() throws IOException {
         MatrixProject p = createMatrixProject("matrix");
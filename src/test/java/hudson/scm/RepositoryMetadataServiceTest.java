@@ -0,0 +1,143 @@
+package hudson.scm;
+
+import hudson.model.AbstractProject;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+/**
+ * Test for {@link RepositoryMetadataService}
+ */
+public class RepositoryMetadataServiceTest extends TestCase {
+
+    private File dir;
+    private SVNURL repo;
+    private CountingService service;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        FSRepositoryFactory.setup();
+        dir = File.createTempFile("metadata", "repo");
+        dir.delete();
+        repo = SVNRepositoryFactory.createLocalRepository(dir, true, false);
+        service = new CountingService();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteQuietly(dir);
+        super.tearDown();
+    }
+
+    public void testPath() throws Exception {
+        SVNURL root = SVNURL.parseURIDecoded("svn://localhost/repo");
+        assertEquals("/", RepositoryMetadataService.getPath(root, root));
+        assertEquals("/trunk/src", RepositoryMetadataService.getPath(
+            SVNURL.parseURIDecoded("svn://localhost/repo/trunk/src"), root));
+        assertEquals("/with space", RepositoryMetadataService.getPath(
+            SVNURL.parseURIDecoded("svn://localhost/repo/with%20space"), root));
+    }
+
+    public void testOtherRepository() throws Exception {
+        SVNURL root = SVNURL.parseURIDecoded("svn://localhost/repo");
+        assertNull(RepositoryMetadataService.getPath(SVNURL.parseURIDecoded("svn://localhost/repository"), root));
+        assertNull(RepositoryMetadataService.getPath(SVNURL.parseURIDecoded("svn://otherhost/repo/trunk"), root));
+        assertNull(RepositoryMetadataService.getPath(SVNURL.parseURIDecoded("http://localhost/repo/trunk"), root));
+        assertNull(RepositoryMetadataService.getPath(SVNURL.parseURIDecoded("svn://localhost:3691/repo"), root));
+    }
+
+    public void testInfoIsCached() throws Exception {
+        RepositoryMetadataService.Info info = service.getInfo(null, repo);
+        assertNotNull(info.uuid);
+        assertSame(info, service.getInfo(null, repo));
+        assertEquals(1, service.opened);
+    }
+
+    public void testNodeKindsAreCheckedOverOneSessionAndCached() throws Exception {
+        SVNURL missing = repo.appendPath("missing", false);
+        Map<SVNURL, SVNNodeKind> kinds = service.getNodeKinds(null, Arrays.asList(repo, missing));
+        assertEquals(SVNNodeKind.DIR, kinds.get(repo));
+        assertEquals(SVNNodeKind.NONE, kinds.get(missing));
+        assertEquals(1, service.opened);
+
+        assertEquals(SVNNodeKind.NONE, service.getNodeKind(null, missing));
+        assertEquals(1, service.opened);
+    }
+
+    public void testNothingIsCachedWithoutTtl() throws Exception {
+        int ttl = RepositoryMetadataService.TTL;
+        RepositoryMetadataService.TTL = 0;
+        try {
+            assertEquals(SVNNodeKind.DIR, service.getNodeKind(null, repo));
+            assertEquals(SVNNodeKind.DIR, service.getNodeKind(null, repo));
+            assertEquals(2, service.opened);
+        } finally {
+            RepositoryMetadataService.TTL = ttl;
+        }
+    }
+
+    public void testFailureIsReportedAndNotCached() throws Exception {
+        SVNURL broken = SVNURL.fromFile(new File(dir.getParentFile(), dir.getName() + "-missing"));
+        Map<SVNURL, SVNNodeKind> kinds = service.getNodeKinds(null, Arrays.asList(broken, repo));
+        assertFalse(kinds.containsKey(broken));
+        assertEquals(SVNNodeKind.DIR, kinds.get(repo));
+
+        try {
+            service.getNodeKind(null, broken);
+            fail();
+        } catch (SVNException e) {
+            // expected
+        }
+        assertEquals(3, service.opened);
+    }
+
+    public void testEntriesAreBounded() throws Exception {
+        int max = RepositoryMetadataService.MAX_ENTRIES;
+        RepositoryMetadataService.MAX_ENTRIES = 2;
+        try {
+            service.getNodeKinds(null, Arrays.asList(repo.appendPath("a", false), repo.appendPath("b", false),
+                repo.appendPath("c", false)));
+            assertEquals(2, service.getNodeKindCount());
+        } finally {
+            RepositoryMetadataService.MAX_ENTRIES = max;
+        }
+    }
+
+    public void testClear() throws Exception {
+        service.getNodeKind(null, repo);
+        service.clear();
+        service.getNodeKind(null, repo);
+        assertEquals(2, service.opened);
+    }
+
+    /**
+     * Opens its own sessions instead of borrowing them from the descriptor, and counts them.
+     */
+    private static final class CountingService extends RepositoryMetadataService {
+        int opened;
+
+        CountingService() {
+            super(null);
+        }
+
+        @Override
+        SVNRepository openRepository(AbstractProject context, SVNURL url) throws SVNException {
+            opened++;
+            return SVNRepositoryFactory.create(url);
+        }
+
+        @Override
+        void releaseRepository(SVNRepository repository) {
+            repository.closeSession();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package hudson.scm;
+
+import java.io.File;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNOptions;
+import org.tmatesoft.svn.core.internal.wc.SVNCompositeConfigFile;
+
+/**
+ * Test for {@link SVNOptionsCache}
+ */
+public class SVNOptionsCacheTest extends TestCase {
+
+    private File dir;
+    private File config;
+    private int checkInterval;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = File.createTempFile("svnconfig", "dir");
+        dir.delete();
+        dir.mkdirs();
+        config = new File(dir, "config");
+        FileUtils.writeStringToFile(config, "[miscellany]\nglobal-ignores = *.foo\n");
+        checkInterval = SVNOptionsCache.CHECK_INTERVAL;
+        // look at the files on every call
+        SVNOptionsCache.CHECK_INTERVAL = 0;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SVNOptionsCache.CHECK_INTERVAL = checkInterval;
+        FileUtils.deleteQuietly(dir);
+        super.tearDown();
+    }
+
+    public void testConfigIsParsedOnceForAllOptions() throws Exception {
+        SVNOptionsCache cache = new SVNOptionsCache(dir);
+        DefaultSVNOptions a = cache.getOptions();
+        DefaultSVNOptions b = cache.getOptions();
+        assertNotSame(a, b);
+        assertSame(getConfigFile(a), getConfigFile(b));
+        // the options read the shared parsed file
+        assertEquals("*.foo", a.getIgnorePatterns()[0]);
+        assertEquals(dir, cache.getConfigDirectory());
+
+        // unchanged as far as the time stamps tell, so not parsed again
+        long modified = config.lastModified();
+        FileUtils.writeStringToFile(config, "[miscellany]\nglobal-ignores = *.bar\n");
+        config.setLastModified(modified);
+        DefaultSVNOptions c = cache.getOptions();
+        assertSame(getConfigFile(a), getConfigFile(c));
+        assertEquals("*.foo", c.getIgnorePatterns()[0]);
+    }
+
+    public void testChangedConfigIsParsedAgain() throws Exception {
+        SVNOptionsCache cache = new SVNOptionsCache(dir);
+        DefaultSVNOptions a = cache.getOptions();
+        assertEquals("*.foo", a.getIgnorePatterns()[0]);
+
+        FileUtils.writeStringToFile(config, "[miscellany]\nglobal-ignores = *.bar\n");
+        config.setLastModified(config.lastModified() + 2000);
+        DefaultSVNOptions b = cache.getOptions();
+        assertNotSame(getConfigFile(a), getConfigFile(b));
+        assertEquals("*.bar", b.getIgnorePatterns()[0]);
+    }
+
+    private static SVNCompositeConfigFile getConfigFile(DefaultSVNOptions options) {
+        return ((SVNOptionsCache.SnapshotOptions) options).getConfigFile();
+    }
+}
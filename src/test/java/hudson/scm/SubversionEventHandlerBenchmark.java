@@ -0,0 +1,58 @@
+package hudson.scm;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.wc.SVNEvent;
+import org.tmatesoft.svn.core.wc.SVNEventAction;
+import org.tmatesoft.svn.core.wc.SVNStatusType;
+
+import java.io.File;
+import java.io.PrintStream;
+
+/**
+ * Measures how long {@link SubversionEventHandlerImpl} takes per event, next to the cost of
+ * canonicalizing each file the way it used to.
+ *
+ * <p>
+ * The events are made up, so the files don't need to exist. Run with the number of events,
+ * the share of them that print a line, and optionally the number of rounds:
+ * <pre>
+ * java hudson.scm.SubversionEventHandlerBenchmark 1000000 0.1 5
+ * </pre>
+ */
+public class SubversionEventHandlerBenchmark {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        double printed = args.length > 1 ? Double.parseDouble(args[1]) : 0.1;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        File base = new File(System.getProperty("java.io.tmpdir"), "benchmark-wc").getAbsoluteFile();
+        SVNEvent[] events = new SVNEvent[count];
+        for (int i = 0; i < count; i++) {
+            File file = new File(base, "src/main/java/dir" + (i % 100) + "/File" + i + ".java");
+            boolean print = i < count * printed;
+            events[i] = new SVNEvent(file, SVNNodeKind.FILE, null, 1,
+                print ? SVNStatusType.CHANGED : SVNStatusType.UNCHANGED, SVNStatusType.UNCHANGED,
+                SVNStatusType.LOCK_UNCHANGED, null, SVNEventAction.UPDATE_UPDATE, null, null, null, null, null, null);
+        }
+
+        PrintStream out = new PrintStream(new NullOutputStream());
+        for (int i = 0; i < rounds; i++) {
+            SubversionEventHandlerImpl handler = new SubversionEventHandlerImpl(out, base);
+            long start = System.nanoTime();
+            for (SVNEvent e : events) {
+                handler.handleEvent(e, -1);
+            }
+            long handled = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (SVNEvent e : events) {
+                e.getFile().getCanonicalPath();
+            }
+            long canonicalized = System.nanoTime() - start;
+
+            System.out.printf("round %d: handler %d ns/event, canonicalization alone %d ns/event%n",
+                Integer.valueOf(i + 1), Long.valueOf(handled / count), Long.valueOf(canonicalized / count));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package hudson.scm;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Test for {@link SubversionRevisionIndex}
+ */
+public class SubversionRevisionIndexTest extends TestCase {
+
+    private static final String TRUNK = "svn://localhost/trunk";
+    private static final String LIB = "svn://localhost/lib";
+
+    private File file;
+
+    protected void setUp() throws Exception {
+        file = File.createTempFile("svnrevisions", ".idx");
+        file.delete();
+    }
+
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testClosest() throws Exception {
+        SubversionRevisionIndex index = new SubversionRevisionIndex(file);
+        assertTrue(index.isEmpty());
+        index.record(3, revisions(TRUNK, 10L));
+        index.record(7, revisions(TRUNK, 15L));
+
+        assertNull(index.getClosest(2));
+        assertEquals(Integer.valueOf(3), index.getClosest(3).getKey());
+        Entry<Integer, Map<String, Long>> closest = index.getClosest(6);
+        assertEquals(Integer.valueOf(3), closest.getKey());
+        assertEquals(Long.valueOf(10L), closest.getValue().get(TRUNK));
+        assertEquals(Integer.valueOf(7), index.getClosest(100).getKey());
+    }
+
+    public void testFirstBuildContaining() throws Exception {
+        SubversionRevisionIndex index = new SubversionRevisionIndex(file);
+        index.record(1, revisions(TRUNK, 10L));
+        index.record(2, revisions(TRUNK, 10L));
+        index.record(3, revisions(TRUNK, 20L));
+
+        assertEquals(Integer.valueOf(1), index.getFirstBuildContaining(TRUNK, 5L));
+        assertEquals(Integer.valueOf(1), index.getFirstBuildContaining(TRUNK, 10L));
+        assertEquals(Integer.valueOf(3), index.getFirstBuildContaining(TRUNK, 11L));
+        assertNull(index.getFirstBuildContaining(TRUNK, 21L));
+        assertNull(index.getFirstBuildContaining(LIB, 1L));
+    }
+
+    public void testReload() throws Exception {
+        SubversionRevisionIndex index = new SubversionRevisionIndex(file);
+        Map<String, Long> revisions = revisions(TRUNK, 10L);
+        revisions.put(LIB, 4L);
+        index.record(1, revisions);
+        index.record(2, revisions(TRUNK, 12L));
+        // build 1 recorded again replaces what it recorded before
+        index.record(1, revisions(TRUNK, 11L));
+
+        SubversionRevisionIndex reloaded = new SubversionRevisionIndex(file);
+        assertEquals(index.getRevisions(1), reloaded.getRevisions(1));
+        assertEquals(1, reloaded.getRevisions(1).size());
+        assertEquals(Long.valueOf(12L), reloaded.getRevisions(2).get(TRUNK));
+    }
+
+    public void testRecordedTwiceInARow() throws Exception {
+        SubversionRevisionIndex index = new SubversionRevisionIndex(file);
+        Map<String, Long> revisions = revisions(TRUNK, 10L);
+        revisions.put(LIB, 4L);
+        index.record(1, revisions);
+        index.record(1, revisions(TRUNK, 11L));
+
+        SubversionRevisionIndex reloaded = new SubversionRevisionIndex(file);
+        assertEquals(index.getRevisions(1), reloaded.getRevisions(1));
+        assertEquals(1, reloaded.getRevisions(1).size());
+    }
+
+    public void testReplacedRecordIsForgotten() throws Exception {
+        SubversionRevisionIndex index = new SubversionRevisionIndex(file);
+        index.record(1, revisions(LIB, 5L));
+        index.record(2, revisions(LIB, 5L));
+        index.record(1, revisions(TRUNK, 10L));
+
+        assertEquals(Integer.valueOf(2), index.getFirstBuildContaining(LIB, 5L));
+        index.record(2, revisions(TRUNK, 10L));
+        assertNull(index.getFirstBuildContaining(LIB, 1L));
+        assertNull(new SubversionRevisionIndex(file).getFirstBuildContaining(LIB, 1L));
+    }
+
+    public void testCorruptedLinesAreIgnored() throws Exception {
+        FileWriter w = new FileWriter(file);
+        w.write("1\t" + TRUNK + "\t10\n");
+        w.write("garbage\n");
+        w.write("x\t" + TRUNK + "\t11\n");
+        w.write("2\t" + TRUNK + "\t1");
+        w.close();
+
+        SubversionRevisionIndex index = new SubversionRevisionIndex(file);
+        assertEquals(Long.valueOf(10L), index.getRevisions(1).get(TRUNK));
+        assertEquals(Long.valueOf(1L), index.getRevisions(2).get(TRUNK));
+        assertTrue(index.getRevisions(3).isEmpty());
+    }
+
+    public void testForget() throws Exception {
+        SubversionRevisionIndex index = new SubversionRevisionIndex(file);
+        index.record(1, revisions(TRUNK, 10L));
+        index.record(2, revisions(TRUNK, 11L));
+        index.forget(2);
+
+        assertEquals(Integer.valueOf(1), index.getClosest(2).getKey());
+        assertEquals(Integer.valueOf(1), new SubversionRevisionIndex(file).getClosest(2).getKey());
+    }
+
+    public void testCompaction() throws Exception {
+        SubversionRevisionIndex index = new SubversionRevisionIndex(file);
+        for (int i = 1; i <= 3; i++) {
+            index.record(i, revisions(TRUNK, 10L + i));
+        }
+        index.forget(1);
+        assertEquals(7, FileUtils.readLines(file).size());
+        // the replaced records now outnumber the live one
+        index.record(2, revisions(TRUNK, 20L));
+        index.forget(3);
+        assertEquals(2, FileUtils.readLines(file).size());
+
+        SubversionRevisionIndex reloaded = new SubversionRevisionIndex(file);
+        assertEquals(Long.valueOf(20L), reloaded.getRevisions(2).get(TRUNK));
+        assertTrue(reloaded.getRevisions(1).isEmpty());
+        assertTrue(reloaded.getRevisions(3).isEmpty());
+    }
+
+    public void testFailedRecordMakesIncomplete() throws Exception {
+        SubversionRevisionIndex index = new SubversionRevisionIndex(new File(file, "missing/" + file.getName()));
+        assertTrue(index.isComplete());
+        try {
+            index.record(1, revisions(TRUNK, 10L));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(index.isComplete());
+    }
+
+    private static Map<String, Long> revisions(String url, long revision) {
+        Map<String, Long> m = new HashMap<String, Long>();
+        m.put(url, revision);
+        return m;
+    }
+}
@@ -33,10 +33,12 @@ import hudson.model.BuildListener;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.scm.subversion.CheckoutUpdater;
+import hudson.scm.subversion.IncrementalUpdateUpdater;
 import hudson.scm.subversion.UpdateUpdater;
 import hudson.scm.subversion.UpdateWithCleanUpdater;
 import hudson.scm.subversion.UpdateWithRevertUpdater;
 import hudson.scm.subversion.WorkspaceUpdater;
+import hudson.util.IOException2;
 import hudson.util.StreamTaskListener;
 import java.io.IOException;
 import java.io.InputStream;
@@ -48,12 +50,19 @@ import java.util.Arrays;
 import java.util.List;
 import org.apache.commons.io.IOUtils;
 import org.jvnet.hudson.test.Bug;
+import org.jvnet.hudson.test.HudsonHomeLoader.CopyExisting;
 import org.jvnet.hudson.test.TestBuilder;
 import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNCommitClient;
+import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.SVNStatus;
+import org.tmatesoft.svn.core.wc.SVNStatusType;
 
 /**
  * @author Kohsuke Kawaguchi
@@ -125,6 +134,158 @@ public class WorkspaceUpdaterTest extends AbstractSubversionTest {
         }
     }
 
+    /**
+     * Cleans up a 1.7 working copy from its wc.db, including its externals.
+     */
+    public void testUpdateWithCleanUpdaterScansWorkingCopy() throws Exception {
+        setGlobalOption("svn.workspaceFormat", "29");
+
+        // this contains an empty "a" file and svn:ignore that ignores b
+        File repo = new CopyExisting(getClass().getResource("clean-update-test.zip")).allocate();
+        String root = "file://" + repo.getPath();
+        SVNClientManager svnm = SubversionSCM.createSvnClientManager((AbstractProject) null);
+        svnm.getCommitClient().doMkDir(new SVNURL[]{SVNURL.parseURIEncoded(root + "/dir"),
+            SVNURL.parseURIEncoded(root + "/gone"), SVNURL.parseURIEncoded(root + "/lib")}, "dirs");
+        File wc = createTmpDir();
+        svnm.getUpdateClient().doCheckout(SVNURL.parseURIEncoded(root), wc, SVNRevision.HEAD, SVNRevision.HEAD,
+            SVNDepth.EMPTY, false);
+        svnm.getWCClient().doSetProperty(wc, SVNProperty.EXTERNALS, SVNPropertyValue.create("ext " + root + "/lib"),
+            false, SVNDepth.EMPTY, null, null);
+        svnm.getCommitClient().doCommit(new File[]{wc}, false, "externals", null, null, false, false, SVNDepth.EMPTY);
+
+        FreeStyleProject pr = createFreeStyleProject();
+        SubversionSCM scm = new SubversionSCM(root);
+        scm.setWorkspaceUpdater(new UpdateWithCleanUpdater());
+        pr.setScm(scm);
+
+        pr.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                FilePath ws = build.getWorkspace();
+                ws.child("b").touch(0); // ignored
+                ws.child("c").touch(0); // unversioned
+                ws.child("a").write("touched", "UTF-8");
+                ws.child("gone").deleteRecursive(); // missing
+                ws.child("dir").deleteRecursive();
+                ws.child("dir").touch(0); // obstructed
+                ws.child("ext/junk").touch(0); // unversioned in the external
+                return true;
+            }
+        });
+        buildAndAssertSuccess(pr);
+
+        pr.getBuildersList().clear();
+        FreeStyleBuild b = buildAndAssertSuccess(pr);
+        System.out.println(b.getLog());
+
+        FilePath ws = b.getWorkspace();
+        assertFalse("Failed to clean up file: b", ws.child("b").exists());
+        assertFalse("Failed to clean up file: c", ws.child("c").exists());
+        assertEquals("Failed to revert file: a", 0, ws.child("a").length());
+        assertTrue("Failed to restore directory: gone", ws.child("gone").isDirectory());
+        assertTrue("Failed to restore directory: dir", ws.child("dir").isDirectory());
+        assertTrue(ws.child("ext").isDirectory());
+        assertFalse("Failed to clean up the external", ws.child("ext/junk").exists());
+    }
+
+    /**
+     * A scheduled addition of a directory with contents is reverted from its root.
+     */
+    public void testUpdateWithRevertUpdaterRevertsAddedDirectory() throws Exception {
+        setGlobalOption("svn.workspaceFormat", "29");
+
+        File repo = new CopyExisting(getClass().getResource("clean-update-test.zip")).allocate();
+        FreeStyleProject pr = createFreeStyleProject();
+        SubversionSCM scm = new SubversionSCM("file://" + repo.getPath());
+        scm.setWorkspaceUpdater(new UpdateWithRevertUpdater());
+        pr.setScm(scm);
+
+        pr.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                FilePath ws = build.getWorkspace();
+                ws.child("added/sub/f").touch(0);
+                try {
+                    SubversionSCM.createSvnClientManager((AbstractProject) null).getWCClient().doAdd(
+                        new File(ws.child("added").getRemote()), false, false, false, SVNDepth.INFINITY, false, false);
+                } catch (SVNException e) {
+                    throw new IOException2(e);
+                }
+                return true;
+            }
+        });
+        buildAndAssertSuccess(pr);
+
+        pr.getBuildersList().clear();
+        FreeStyleBuild b = buildAndAssertSuccess(pr);
+        System.out.println(b.getLog());
+
+        SVNStatus st = SubversionSCM.createSvnClientManager((AbstractProject) null).getStatusClient()
+            .doStatus(new File(b.getWorkspace().child("added").getRemote()), false);
+        assertEquals(SVNStatusType.STATUS_UNVERSIONED, st.getContentsStatus());
+    }
+
+    /**
+     * Deletions and replacements come with their subtree.
+     */
+    public void testIncrementalUpdateUpdater() throws Exception {
+        File repo = new CopyExisting(getClass().getResource("clean-update-test.zip")).allocate();
+        String root = "file://" + repo.getPath();
+        SVNClientManager svnm = SubversionSCM.createSvnClientManager((AbstractProject) null);
+        svnm.getCommitClient().doMkDir(new SVNURL[]{SVNURL.parseURIEncoded(root + "/dir"),
+            SVNURL.parseURIEncoded(root + "/dir/sub")}, "dirs");
+
+        FreeStyleProject pr = createFreeStyleProject();
+        SubversionSCM scm = new SubversionSCM(root);
+        scm.setWorkspaceUpdater(new IncrementalUpdateUpdater());
+        pr.setScm(scm);
+        FreeStyleBuild b = buildAndAssertSuccess(pr);
+        assertTrue(b.getWorkspace().child("dir/sub").isDirectory());
+
+        // delete a, replace the directory with a file
+        File wc = createTmpDir();
+        svnm.getUpdateClient().doCheckout(SVNURL.parseURIEncoded(root), wc, SVNRevision.HEAD, SVNRevision.HEAD,
+            SVNDepth.INFINITY, false);
+        svnm.getWCClient().doDelete(new File(wc, "a"), false, false);
+        svnm.getWCClient().doDelete(new File(wc, "dir"), false, false);
+        new FilePath(new File(wc, "dir")).write("replaced", "UTF-8");
+        svnm.getWCClient().doAdd(new File(wc, "dir"), false, false, false, SVNDepth.EMPTY, false, false);
+        svnm.getCommitClient().doCommit(new File[]{wc}, false, "replaced", null, null, false, false, SVNDepth.INFINITY);
+
+        b = buildAndAssertSuccess(pr);
+        String log = getLog(b);
+        System.out.println(log);
+        assertTrue(log.contains("Updating 2 changed paths"));
+        FilePath ws = b.getWorkspace();
+        assertFalse(ws.child("a").exists());
+        assertFalse(ws.child("dir").isDirectory());
+        assertEquals("replaced", ws.child("dir").readToString());
+    }
+
+    public void testIncrementalUpdateUpdaterWithTooManyChanges() throws Exception {
+        File repo = new CopyExisting(getClass().getResource("clean-update-test.zip")).allocate();
+        String root = "file://" + repo.getPath();
+
+        FreeStyleProject pr = createFreeStyleProject();
+        SubversionSCM scm = new SubversionSCM(root);
+        scm.setWorkspaceUpdater(new IncrementalUpdateUpdater(1));
+        pr.setScm(scm);
+        buildAndAssertSuccess(pr);
+
+        SVNClientManager svnm = SubversionSCM.createSvnClientManager((AbstractProject) null);
+        svnm.getCommitClient().doMkDir(new SVNURL[]{SVNURL.parseURIEncoded(root + "/x")}, "x");
+        svnm.getCommitClient().doMkDir(new SVNURL[]{SVNURL.parseURIEncoded(root + "/y")}, "y");
+
+        FreeStyleBuild b = buildAndAssertSuccess(pr);
+        String log = getLog(b);
+        System.out.println(log);
+        assertTrue(log.contains("Too many changes"));
+        assertTrue(b.getWorkspace().child("x").isDirectory());
+        assertTrue(b.getWorkspace().child("y").isDirectory());
+    }
+
     /**
      * Used for experimenting the memory leak problem. This test by itself
      * doesn't detect that, but I'm leaving it in anyway.
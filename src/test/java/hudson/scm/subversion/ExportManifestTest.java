@@ -0,0 +1,41 @@
+package hudson.scm.subversion;
+
+import hudson.Util;
+import junit.framework.TestCase;
+
+import java.io.File;
+
+/**
+ * Test for {@link ExportManifest}
+ */
+public class ExportManifestTest extends TestCase {
+
+    public void testGet() {
+        ExportManifest manifest = new ExportManifest();
+        manifest.add("trunk/", "http://localhost/repo/trunk", 10);
+        manifest.add("trunk\\lib", "http://localhost/repo/lib", 7);
+        manifest.add("", "http://localhost/repo/root", 3);
+
+        assertEquals(10, manifest.get("./trunk").revision);
+        assertEquals("http://localhost/repo/lib", manifest.get("trunk/lib/").url);
+        assertEquals(3, manifest.get(".").revision);
+        assertNull(manifest.get("trunk/src"));
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        File ws = Util.createTempDir();
+        try {
+            assertNull(ExportManifest.load(ws));
+
+            ExportManifest manifest = new ExportManifest();
+            manifest.add("trunk", "http://localhost/repo/trunk", 10);
+            manifest.save(ws);
+
+            ExportManifest.Entry e = ExportManifest.load(ws).get("trunk");
+            assertEquals("http://localhost/repo/trunk", e.url);
+            assertEquals(10, e.revision);
+        } finally {
+            Util.deleteRecursive(ws);
+        }
+    }
+}
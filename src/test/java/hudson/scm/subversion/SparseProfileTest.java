@@ -0,0 +1,77 @@
+package hudson.scm.subversion;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link SparseProfile}
+ */
+public class SparseProfileTest extends TestCase {
+
+    public void testParse() {
+        assertNull(SparseProfile.parse(null));
+        assertNull(SparseProfile.parse("\n# nothing\n  \n"));
+
+        SparseProfile profile = SparseProfile.parse("src/main\n./docs/ files\r\n# comment\nlib empty\n");
+        assertEquals(3, profile.getEntries().size());
+        assertEquals("src/main", profile.getEntries().get(0).path);
+        assertEquals("infinity", profile.getEntries().get(0).depth);
+        assertEquals("docs", profile.getEntries().get(1).path);
+        assertEquals("files", profile.getEntries().get(1).depth);
+        assertEquals("empty", profile.getEntries().get(2).depth);
+    }
+
+    public void testParseErrors() {
+        for (String text : new String[]{"src infinity extra", "src unknown", "../other", "src/../../other"}) {
+            try {
+                SparseProfile.parse(text);
+                fail(text);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testParseQuoted() {
+        SparseProfile profile = SparseProfile.parse("\"release notes\" files\n\"my docs/\"\n");
+        assertEquals(2, profile.getEntries().size());
+        assertEquals("release notes", profile.getEntries().get(0).path);
+        assertEquals("files", profile.getEntries().get(0).depth);
+        assertEquals("my docs", profile.getEntries().get(1).path);
+        assertEquals("infinity", profile.getEntries().get(1).depth);
+
+        // the textual form parses back to the same profile
+        assertEquals(profile.toString(), SparseProfile.parse(profile.toString()).toString());
+
+        for (String text : new String[]{"\"release notes", "\"release notes\"files", "\"a b\" files extra"}) {
+            try {
+                SparseProfile.parse(text);
+                fail(text);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testIncludes() {
+        SparseProfile profile = SparseProfile.parse("src/main\ndocs files\nlib empty");
+        assertTrue(profile.includes(""));
+        assertTrue(profile.includes("src"));
+        assertFalse(profile.includes("src/test"));
+        assertTrue(profile.includes("src/main"));
+        assertTrue(profile.includes("src/main/java/Foo.java"));
+        assertTrue(profile.includes("docs/index.html"));
+        assertFalse(profile.includes("docs/images/logo.png"));
+        assertTrue(profile.includes("lib"));
+        assertFalse(profile.includes("lib/foo.jar"));
+        assertFalse(profile.includes("pom.xml"));
+    }
+
+    public void testIncludesRepositoryPath() {
+        SparseProfile profile = SparseProfile.parse("src/main");
+        assertTrue(profile.includesRepositoryPath("/trunk", "/trunk"));
+        assertTrue(profile.includesRepositoryPath("/trunk", "/trunk/src/main/Foo.java"));
+        assertFalse(profile.includesRepositoryPath("/trunk", "/trunk/pom.xml"));
+        assertFalse(profile.includesRepositoryPath("/trunk", "/trunk2/src/main/Foo.java"));
+        assertTrue(profile.includesRepositoryPath("", "/src/main/Foo.java"));
+    }
+}
@@ -0,0 +1,47 @@
+package hudson.scm.subversion;
+
+import hudson.scm.SubversionSCM.ModuleLocation;
+import java.io.File;
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link WorkspaceUpdater.UpdateTask}
+ */
+public class UpdateTaskTest extends TestCase {
+
+    public void testHasNestedLocations() {
+        assertFalse(nested("a", "b"));
+        assertFalse(nested("lib", "lib2"));
+        assertFalse(nested("a/b", "a/c"));
+        assertTrue(nested("a", "a"));
+        assertTrue(nested("./a", "a/"));
+        assertTrue(nested("a", "a/b"));
+        assertTrue(nested("a/b", "a"));
+        assertTrue(nested(".", "a"));
+    }
+
+    public void testPreUpdateThreadSafety() {
+        assertTrue(new UpdateUpdater.TaskImpl().isPreUpdateThreadSafe());
+        assertTrue(new UpdateWithRevertUpdater.TaskImpl().isPreUpdateThreadSafe());
+        assertFalse(new LegacyUpdateTask().isPreUpdateThreadSafe());
+        assertFalse(new LegacyUpdateTask() {}.isPreUpdateThreadSafe());
+        assertTrue(new SwitchUpdater.TaskImpl().isPreUpdateThreadSafe());
+    }
+
+    private static boolean nested(String... dirs) {
+        ModuleLocation[] locations = new ModuleLocation[dirs.length];
+        for (int i = 0; i < dirs.length; i++) {
+            locations[i] = new ModuleLocation("http://localhost/repo/" + i, dirs[i]);
+        }
+        return WorkspaceUpdater.UpdateTask.hasNestedLocations(locations);
+    }
+
+    /**
+     * Written against the hook that predates the per-location {@code SVNClientManager}.
+     */
+    private static class LegacyUpdateTask extends UpdateUpdater.TaskImpl {
+        @Override
+        protected void preUpdate(ModuleLocation module, File local) {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package hudson.scm.subversion;
+
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.wc.ISVNStatusHandler;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNStatus;
+import org.tmatesoft.svn.core.wc.SVNStatusType;
+
+import java.io.File;
+
+/**
+ * Compares how long {@link WorkingCopyScanner} and "svn status" take to find the files that
+ * {@link UpdateWithCleanUpdater} would clean up. Nothing is deleted.
+ *
+ * <p>
+ * Run with the root of an existing 1.7 or 1.8 working copy, and optionally the number of rounds:
+ * <pre>
+ * java hudson.scm.subversion.WorkingCopyScannerBenchmark /path/to/wc 5
+ * </pre>
+ */
+public class WorkingCopyScannerBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: WorkingCopyScannerBenchmark WORKING_COPY [ROUNDS]");
+            System.exit(1);
+        }
+        File wc = new File(args[0]).getCanonicalFile();
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        SVNClientManager manager = SVNClientManager.newInstance();
+        try {
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+                WorkingCopyScanner scanner = WorkingCopyScanner.open(wc);
+                if (scanner == null) {
+                    System.err.println(wc + " isn't a 1.7 or 1.8 working copy");
+                    System.exit(1);
+                }
+                WorkingCopyScanner.Result result = scanner.scan(WorkingCopyScanner.THREADS);
+                long scan = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                final int[] found = new int[1];
+                manager.getStatusClient().doStatus(wc, null, SVNDepth.INFINITY, false, false, true, false,
+                    new ISVNStatusHandler() {
+                        public void handleStatus(SVNStatus status) throws SVNException {
+                            SVNStatusType s = status.getContentsStatus();
+                            if (s == SVNStatusType.STATUS_UNVERSIONED || s == SVNStatusType.STATUS_IGNORED
+                                || s == SVNStatusType.STATUS_MODIFIED || s == SVNStatusType.STATUS_NONE) {
+                                found[0]++;
+                            }
+                        }
+                    }, null);
+                long status = System.nanoTime() - start;
+
+                System.out.printf("round %d: scan %d ms (%d unversioned, %d touched), status %d ms (%d found)%n",
+                    Integer.valueOf(i + 1), Long.valueOf(scan / 1000000), Integer.valueOf(result.unversioned.size()),
+                    Integer.valueOf(result.modified.size()), Long.valueOf(status / 1000000), Integer.valueOf(found[0]));
+            }
+        } finally {
+            manager.dispose();
+        }
+    }
+}
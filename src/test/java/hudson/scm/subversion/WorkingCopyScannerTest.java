@@ -0,0 +1,35 @@
+package hudson.scm.subversion;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+
+/**
+ * Test for {@link WorkingCopyScanner}
+ */
+public class WorkingCopyScannerTest extends TestCase {
+
+    public void testSubSecondRecordedTime() throws Exception {
+        // wc.db keeps microseconds
+        long recorded = 1300000000123456L;
+        assertTrue(WorkingCopyScanner.isSameTime(1300000000123L, recorded));
+        assertFalse(WorkingCopyScanner.isSameTime(1300000000124L, recorded));
+        // while File.lastModified() may only have whole seconds
+        assertTrue(WorkingCopyScanner.isSameTime(1300000000000L, recorded));
+        assertFalse(WorkingCopyScanner.isSameTime(1300000001000L, recorded));
+        assertFalse(WorkingCopyScanner.isSameTime(1299999999000L, recorded));
+    }
+
+    public void testFileWithSubSecondRecordedTime() throws Exception {
+        File f = File.createTempFile("scanner", "test");
+        try {
+            FileUtils.writeStringToFile(f, "content");
+            assertTrue(f.setLastModified(1300000000000L));
+            assertTrue(WorkingCopyScanner.isSameTime(f.lastModified(), 1300000000654321L));
+            assertFalse(WorkingCopyScanner.isSameTime(f.lastModified(), 1300000002654321L));
+        } finally {
+            f.delete();
+        }
+    }
+}
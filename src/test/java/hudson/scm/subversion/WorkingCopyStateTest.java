@@ -0,0 +1,80 @@
+package hudson.scm.subversion;
+
+import hudson.Util;
+import hudson.scm.SubversionSCM.SvnInfo;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+import java.io.File;
+
+/**
+ * Test for {@link WorkingCopyState}
+ */
+public class WorkingCopyStateTest extends TestCase {
+    private File dir;
+    private File ws;
+    private File db;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Util.createTempDir();
+        ws = new File(dir, "ws");
+        db = new File(new File(new File(ws, "foo"), SVNFileUtil.getAdminDirectoryName()), "wc.db");
+        FileUtils.writeStringToFile(db, "nodes");
+        touch(-60000);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Util.deleteRecursive(dir);
+    }
+
+    public void testGet() {
+        WorkingCopyState state = WorkingCopyState.load(ws);
+        File wc = new File(ws, "foo");
+        assertNull(state.get("foo", wc));
+
+        state.put("./foo/", wc, new SvnInfo("http://localhost/repo/foo", 3));
+        state.save();
+
+        state = WorkingCopyState.load(ws);
+        assertEquals(3, state.get("foo", wc).revision);
+
+        touch(-30000);
+        assertNull("the working copy has changed", state.get("foo", wc));
+
+        state.forget("foo");
+        assertNull(state.get("foo", wc));
+    }
+
+    public void testRacy() {
+        long now = System.currentTimeMillis();
+        File wc = new File(ws, "foo");
+        assertTrue(WorkingCopyState.isRacy(wc, now - 120000));
+        assertFalse(WorkingCopyState.isRacy(wc, now));
+
+        // changed in the same second as it was recorded
+        touch(0);
+        WorkingCopyState state = WorkingCopyState.load(ws);
+        state.put("foo", wc, new SvnInfo("http://localhost/repo/foo", 3));
+        assertNull(state.get("foo", wc));
+    }
+
+    public void testTransactionUnderWay() throws Exception {
+        WorkingCopyState state = WorkingCopyState.load(ws);
+        File wc = new File(ws, "foo");
+        FileUtils.writeStringToFile(new File(db.getParentFile(), "wc.db-journal"), "");
+        state.put("foo", wc, new SvnInfo("http://localhost/repo/foo", 3));
+        assertNull(state.get("foo", wc));
+    }
+
+    /**
+     * Sets the timestamps of the administrative area relative to now, in whole seconds.
+     */
+    private void touch(long offset) {
+        long t = (System.currentTimeMillis() + offset) / 1000 * 1000;
+        db.setLastModified(t);
+        db.getParentFile().setLastModified(t);
+    }
+}